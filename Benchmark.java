@@ -0,0 +1,190 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.file.*;
+import java.util.*;
+import visitors.*;
+import syntaxtree.*;
+import types.SymbolTable;
+
+
+// Throughput and allocation benchmark of each compiler phase
+//
+// Every phase is run over a whole input set (the example programs, or a synthetic program) in timed
+// iterations after a warm-up, like a JMH throughput benchmark. Allocation is measured per thread, the
+// same numbers JMH reports with -prof gc as gc.alloc.rate and gc.alloc.rate.norm.
+//
+// Code generation streams each definition to its writer as Main does: llvm discards the code, emit
+// writes it to a file through Main's buffered writer, so the difference of the two is the cost of output.
+//
+// Usage: java Benchmark [-wi N] [-i N] [-t MS] [-p phase,...] [-s classes,...] [files or directories]
+public class Benchmark {
+	static final String[] PHASES = { "parse", "declarations", "typecheck", "llvm", "emit" };
+
+	// Input program with the results of every phase, so each phase can run on its own
+	static class Program {
+		String name;
+		byte[] source;
+		Node root;
+		SymbolTable classes;
+		Annotations annotations;
+
+		Program(String name, byte[] source) throws Exception {
+			this.name = name;
+			this.source = source;
+			root = new MiniJavaParser(new ByteArrayInputStream(source)).Goal();
+			DeclarationVisitor v1 = new DeclarationVisitor();
+			root.accept(v1, null);
+			TypeCheckVisitor v2 = new TypeCheckVisitor(v1.classes);
+			root.accept(v2, null);
+			classes = v2.classes;
+			annotations = v2.annotations;
+		}
+	}
+
+	static com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+	static File emitFile;
+	static volatile Object sink;		// Keeps results alive so phases are not optimized away
+
+
+	static void run(String phase, Program p) throws Exception {
+		switch(phase) {
+			case "parse":
+				sink = new MiniJavaParser(new ByteArrayInputStream(p.source)).Goal();
+				break;
+			case "declarations":
+				DeclarationVisitor v1 = new DeclarationVisitor();
+				p.root.accept(v1, null);
+				sink = v1.classes;
+				break;
+			case "typecheck":
+				TypeCheckVisitor v2 = new TypeCheckVisitor(p.classes);
+				p.root.accept(v2, null);
+				sink = v2.annotations;
+				break;
+			case "llvm":
+				LLVM_Visitor v3 = new LLVM_Visitor(p.classes, p.annotations, Writer.nullWriter());
+				p.root.accept(v3, null);
+				sink = v3;
+				break;
+			case "emit":
+				try(Writer destFile = new BufferedWriter(new FileWriter(emitFile), 1 << 16)) {
+					p.root.accept(new LLVM_Visitor(p.classes, p.annotations, destFile), null);
+				}
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown phase '" + phase + "'");
+		}
+	}
+
+	// One timed iteration, returns { ops/s, allocated bytes/s, allocated bytes/op }
+	static double[] iteration(String phase, List<Program> programs, long millis) throws Exception {
+		long thread = Thread.currentThread().getId();
+		long ops = 0;
+		long allocated = threads.getThreadAllocatedBytes(thread);
+		long start = System.nanoTime(), end = start + millis * 1000000;
+		long now;
+		do {
+			for(Program p : programs)
+				run(phase, p);
+			ops++;
+		} while((now = System.nanoTime()) < end);
+
+		double seconds = (now - start) / 1e9;
+		allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+		return new double[] { ops / seconds, allocated / seconds, (double) allocated / ops };
+	}
+
+
+	static void benchmark(String phase, String input, List<Program> programs, int warmups, int iterations, long millis) throws Exception {
+		for(int i = 0; i < warmups; i++)
+			iteration(phase, programs, millis);
+
+		double[][] results = new double[iterations][];
+		for(int i = 0; i < iterations; i++)
+			results[i] = iteration(phase, programs, millis);
+
+		double[] mean = new double[3];
+		for(double[] r : results)
+			for(int k = 0; k < 3; k++)
+				mean[k] += r[k] / iterations;
+
+		double variance = 0;
+		for(double[] r : results)
+			variance += (r[0] - mean[0]) * (r[0] - mean[0]) / Math.max(1, iterations - 1);
+
+		System.out.printf("%-14s %-16s %12.3f +- %10.3f %12.3f %16.0f%n",
+						  phase, input, mean[0], Math.sqrt(variance), mean[1] / (1 << 20), mean[2]);
+	}
+
+	// Synthetic program of the given number of classes from Generator, with its default shape
+	static byte[] synthesize(int classes) {
+		StringWriter src = new StringWriter();
+		new Generator(classes, 3, 4, 4, 10, 3, 1).generate(src);
+		return src.toString().getBytes();
+	}
+
+
+	static void collect(File file, List<Program> programs) throws IOException {
+		if(file.isDirectory()) {
+			File[] files = file.listFiles();
+			Arrays.sort(files);
+			for(File f : files)
+				collect(f, programs);
+		}
+		else if(file.getName().endsWith(".java"))
+			try {
+				programs.add(new Program(file.getName(), Files.readAllBytes(file.toPath())));
+			}
+			catch(Exception e) {		// Only benchmark programs that compile
+			}
+	}
+
+
+	public static void main(String[] args) throws Exception {
+		int warmups = 5, iterations = 10;
+		long millis = 1000;
+		List<String> phases = Arrays.asList(PHASES);
+		List<Integer> scales = Arrays.asList(10, 100, 1000);
+		List<String> inputs = new ArrayList<>();
+
+		for(int i = 0; i < args.length; i++)
+			if(args[i].equals("-wi"))
+				warmups = Integer.parseInt(args[++i]);
+			else if(args[i].equals("-i"))
+				iterations = Integer.parseInt(args[++i]);
+			else if(args[i].equals("-t"))
+				millis = Long.parseLong(args[++i]);
+			else if(args[i].equals("-p"))
+				phases = Arrays.asList(args[++i].split(","));
+			else if(args[i].equals("-s")) {
+				scales = new ArrayList<>();
+				for(String s : args[++i].split(","))
+					if(!s.isEmpty())
+						scales.add(Integer.parseInt(s));
+			}
+			else
+				inputs.add(args[i]);
+
+		if(inputs.isEmpty())
+			inputs = Arrays.asList("examples/correct", "examples/minijava-testsuite-master");
+
+		List<Program> examples = new ArrayList<>();
+		for(String input : inputs)
+			collect(new File(input), examples);
+
+		Map<String, List<Program>> inputSets = new LinkedHashMap<>();
+		if(!examples.isEmpty())
+			inputSets.put("examples(" + examples.size() + ")", examples);
+		for(int classes : scales)
+			inputSets.put("synthetic-" + classes, Arrays.asList(new Program("synthetic-" + classes, synthesize(classes))));
+
+		emitFile = File.createTempFile("benchmark", ".ll");
+		emitFile.deleteOnExit();
+
+		System.out.printf("# Warmup: %d x %d ms, Measurement: %d x %d ms%n", warmups, millis, iterations, millis);
+		System.out.printf("%-14s %-16s %12s    %10s %12s %16s%n", "Phase", "Input", "ops/s", "error", "alloc MB/s", "alloc B/op");
+		for(Map.Entry<String, List<Program>> inputSet : inputSets.entrySet())
+			for(String phase : phases)
+				benchmark(phase, inputSet.getKey(), inputSet.getValue(), warmups, iterations, millis);
+	}
+}
@@ -0,0 +1,179 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+
+// Differential test of the code generators against the syntax tree interpreter
+//
+// Every program runs with --run=tree, the reference, then with --run and -fjvm, whose output must
+// match it exactly, and is compiled to LLVM with each option set, whose program output and exit
+// status must match the reference's. LLVM files run with lli, or are built with clang (linked with
+// runtime/gc.c for -fgc, which lli cannot run); without either only --run and -fjvm are checked.
+//
+// Usage: java Check [-seeds N] [files or directories]
+// Defaults to examples/correct and examples/standard plus Generator programs of seeds 1 to N (default 5)
+// Inputs that cannot be read fail, programs that do not compile (the -error examples) are skipped
+public class Check {
+	static final String[][] OPTION_SETS = {
+		{},
+		{ "-fbounds-check-elim" },
+		{ "-fssa" },
+		{ "-ffold-constants" },
+		{ "-fdevirtualize" },
+		{ "-finline" },
+		{ "-fpack-fields" },
+		{ "-fescape-analysis" },
+		{ "-farena" },
+		{ "-fbuffered-output" },
+		{ "-fpack-booleans" },
+		{ "-fpack-booleans", "-fbounds-check-elim" },
+		{ "-fir" },
+		{ "-fir", "-ffold-constants" },
+		{ "-O" },
+		{ "-O", "-farena", "-fpack-booleans" },
+		{ "-fgc" },
+		{ "-O", "-fgc" },
+	};
+	static final long TIMEOUT = 60;		// Seconds a compiled program may run
+
+	static File work;			// Current directory of the compilations, holding llvm/ and classes/
+	static String runner;		// "lli", "clang" or null when LLVM files cannot be run
+	static int checks, failures;
+
+
+	// Compile or run file with Main in-process, returns { stdout, exit status, generated file }
+	static String[] compile(File file, String... flags) {
+		List<String> args = new ArrayList<>(Arrays.asList(flags));
+		args.add(file.getAbsolutePath());
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		List<String> generated = new ArrayList<>();
+		int status = Main.run(args, new HashMap<>(), work, new PrintStream(out, true), new PrintStream(new ByteArrayOutputStream()), generated);
+		return new String[] { out.toString(), String.valueOf(status), generated.isEmpty() ? null : generated.get(0) };
+	}
+
+	// Run a generated LLVM file, returns { stdout, exit status }, or null if it cannot be run with these flags
+	static String[] execute(String ll, String[] flags) throws Exception {
+		boolean gc = Arrays.asList(flags).contains("-fgc");
+		List<String> command = new ArrayList<>();
+		if(runner.equals("lli")) {
+			if(gc)
+				return null;
+			command.addAll(Arrays.asList("lli", ll));
+		}
+		else {
+			File exe = new File(work, "a.out");
+			List<String> build = new ArrayList<>(Arrays.asList("clang", "-O1", "-w", "-o", exe.getPath(), ll));
+			if(gc)
+				build.add(new File("runtime", "gc.c").getAbsolutePath());
+			String[] built = exec(build);
+			if(!built[1].equals("0"))
+				return new String[] { "clang failed: " + built[0], built[1] };
+			command.add(exe.getPath());
+		}
+		return exec(command);
+	}
+
+
+	static String[] exec(List<String> command) throws Exception {
+		File output = new File(work, "output");
+		Process process = new ProcessBuilder(command).redirectOutput(output).redirectError(ProcessBuilder.Redirect.DISCARD).start();
+		if(!process.waitFor(TIMEOUT, TimeUnit.SECONDS)) {
+			process.destroyForcibly().waitFor();
+			return new String[] { "timed out after " + TIMEOUT + " s", "-1" };
+		}
+		return new String[] { new String(Files.readAllBytes(output.toPath())), String.valueOf(process.exitValue()) };
+	}
+
+
+	static void expect(File file, String what, String[] expected, String[] actual) {
+		checks++;
+		if(expected[0].equals(actual[0]) && expected[1].equals(actual[1]))
+			return;
+		failures++;
+		System.out.println("FAIL " + file.getPath() + " " + what + ": expected status " + expected[1] + ", got " + actual[1] +
+							(expected[0].equals(actual[0]) ? "" : ", output differs"));
+	}
+
+
+	static void check(File file) throws Exception {
+		if(!file.canRead()) {
+			failures++;
+			System.out.println("FAIL " + file.getPath() + ": cannot be read");
+			return;
+		}
+		String[] header = compile(file);		// Offsets printed by the compiler, before any program output
+		String[] reference = compile(file, "--run=tree");
+		if(header[2] == null || !reference[0].startsWith(header[0])) {
+			System.out.println("SKIP " + file.getPath() + ": does not compile");
+			return;
+		}
+		String[] program = { reference[0].substring(header[0].length()), reference[1] };
+
+		expect(file, "--run", reference, compile(file, "--run"));
+		expect(file, "-fjvm", reference, compile(file, "-fjvm"));
+		if(runner == null)
+			return;
+		for(String[] flags : OPTION_SETS) {
+			String ll = compile(file, flags)[2];
+			String[] run = (ll == null) ? new String[] { "no LLVM file generated", "-1" } : execute(ll, flags);
+			if(run != null)
+				expect(file, (flags.length == 0) ? "(default)" : String.join(" ", flags), program, run);
+		}
+	}
+
+
+	static void collect(File file, List<File> files) {
+		File[] children = file.isDirectory() ? file.listFiles() : null;
+		if(children != null) {
+			Arrays.sort(children);
+			for(File f : children)
+				collect(f, files);
+		}
+		else if(file.getName().endsWith(".java") || !file.canRead())		// Unreadable inputs fail in check
+			files.add(file);
+	}
+
+
+	static boolean found(String tool) {
+		for(String dir : System.getenv().getOrDefault("PATH", "").split(File.pathSeparator))
+			if(new File(dir, tool).canExecute())
+				return true;
+		return false;
+	}
+
+
+	public static void main(String[] args) throws Exception {
+		int seeds = 5;
+		List<File> files = new ArrayList<>();
+		for(int i = 0; i < args.length; i++)
+			if(args[i].equals("-seeds") && i + 1 < args.length)
+				seeds = Integer.parseInt(args[++i]);
+			else
+				collect(new File(args[i]), files);
+		if(files.isEmpty()) {
+			collect(new File("examples/correct"), files);
+			collect(new File("examples/standard"), files);
+		}
+
+		work = Files.createTempDirectory("minijava-check").toFile();
+		for(int seed = 1; seed <= seeds; seed++) {
+			File generated = new File(work, "Seed" + seed + ".java");
+			try(Writer writer = new BufferedWriter(new FileWriter(generated))) {
+				new Generator(10, 3, 4, 4, 10, 3, seed).generate(writer);
+			}
+			files.add(generated);
+		}
+
+		runner = found("lli") ? "lli" : found("clang") ? "clang" : null;
+		if(runner == null)
+			System.out.println("Neither lli nor clang found, only --run and -fjvm are checked");
+
+		for(File file : files)
+			check(file);
+
+		System.out.println(files.size() + " programs, " + checks + " checks, " + failures + " failures");
+		if(failures > 0)
+			System.exit(1);
+	}
+}
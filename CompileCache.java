@@ -0,0 +1,121 @@
+import java.io.*;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+
+
+// On disk cache of compilation results keyed by a hash of the source text and the compiler version
+//
+// Each entry is [key].rec holding the compiler output and errors, plus [key].ll when compilation
+// succeeded. The record's modification time is its last use, the least recently used entries are
+// removed when the directory grows past maxBytes.
+public class CompileCache {
+	File dir;
+	long maxBytes;
+	long size;			// Bytes used by the cache directory, -1 until first measured
+	String options;		// Arguments that change the generated code
+
+	public CompileCache(File dir, long maxBytes, String options) {
+		this.dir = dir;
+		this.maxBytes = maxBytes;
+		this.options = options;
+		size = -1;
+		dir.mkdirs();
+	}
+
+
+	public String key(byte[] source) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update((Main.VERSION + "\0" + options + "\0").getBytes());
+			StringBuilder key = new StringBuilder();
+			for(byte b : digest.digest(source))
+				key.append(String.format("%02x", b));
+
+			return key.toString();
+		}
+		catch(NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	// Replay a cached compilation, copying its LLVM code to dest
+	// Returns whether the cached compilation succeeded, or null on a cache miss
+	public Boolean restore(String key, File dest, PrintStream out, PrintStream err) {
+		File record = new File(dir, key + ".rec");
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(record)))) {
+			boolean compiled = in.readBoolean();
+			byte[] output = new byte[in.readInt()];
+			in.readFully(output);
+			byte[] errors = new byte[in.readInt()];
+			in.readFully(errors);
+
+			if(compiled)
+				Files.copy(new File(dir, key + ".ll").toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+			record.setLastModified(System.currentTimeMillis());
+			out.write(output);
+			err.write(errors);
+			return compiled;
+		}
+		catch(IOException e) {		// Missing or partially evicted entry
+			return null;
+		}
+	}
+
+	// Store the result of a compilation, ll is null if compilation failed
+	public void store(String key, byte[] output, byte[] errors, File ll) {
+		try {
+			// Write to temporary files and rename, so concurrent readers never see partial entries
+			if(ll != null)
+				Files.move(Files.copy(ll.toPath(), File.createTempFile(key, ".tmp", dir).toPath(), StandardCopyOption.REPLACE_EXISTING),
+						   new File(dir, key + ".ll").toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+			File temp = File.createTempFile(key, ".tmp", dir);
+			try(DataOutputStream record = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+				record.writeBoolean(ll != null);
+				record.writeInt(output.length);
+				record.write(output);
+				record.writeInt(errors.length);
+				record.write(errors);
+			}
+			Files.move(temp.toPath(), new File(dir, key + ".rec").toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			added(9 + output.length + errors.length + (ll != null ? ll.length() : 0));
+		}
+		catch(IOException e) {
+			// Caching is best effort, the compilation itself already succeeded
+		}
+	}
+
+	// Account for a new entry, evicting when the cache is over its limit
+	synchronized void added(long bytes) {
+		if(size < 0 || (size += bytes) > maxBytes)
+			evict();
+	}
+
+	// Remove least recently used entries until the cache is back under 90% of maxBytes
+	void evict() {
+		File[] files = dir.listFiles();
+		if(files == null)
+			return;
+
+		size = 0;
+		for(File file : files)
+			size += file.length();
+
+		if(size <= maxBytes)
+			return;
+
+		File[] records = dir.listFiles((d, name) -> name.endsWith(".rec"));
+		Arrays.sort(records, Comparator.comparingLong(File::lastModified));
+		for(File record : records) {
+			String key = record.getName().substring(0, record.getName().length() - 4);
+			File ll = new File(dir, key + ".ll");
+			size -= record.length() + ll.length();
+			record.delete();
+			ll.delete();
+			if(size <= maxBytes / 10 * 9)
+				break;
+		}
+	}
+}
@@ -0,0 +1,157 @@
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+
+// Long running compiler listening on a unix domain socket, so repeated compilations reuse a warm JVM
+//
+// Request:  cwd, arguments (same as Main), inline sources as (name, text)
+// Response: compiler output, compiler errors, exit status
+//
+// Clients are trusted: the server compiles in any cwd they send and writes the files their arguments
+// name with its own permissions. The socket file is therefore readable and writable by its owner only,
+// and the default one lives in a per-user directory of mode 0700 that client and server both check.
+public class CompileServer {
+	static final String DEFAULT_SOCKET = System.getProperty("java.io.tmpdir") + "/minijava-" + System.getProperty("user.name") + "/minijava.sock";
+	static final Set<PosixFilePermission> DIRECTORY_MODE = PosixFilePermissions.fromString("rwx------");
+	static final Set<PosixFilePermission> SOCKET_MODE = PosixFilePermissions.fromString("rw-------");
+
+	public static int serve(String socket) {
+		Path path = Paths.get(socket);
+		try(ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+			if(socket.equals(DEFAULT_SOCKET))
+				privateDirectory(path.getParent());
+			if(listening(path)) {
+				System.err.println("A compile server is already listening on " + path);
+				return 1;
+			}
+			Files.deleteIfExists(path);			// Left behind by a server that did not shut down
+			server.bind(UnixDomainSocketAddress.of(path));
+			Files.setPosixFilePermissions(path, SOCKET_MODE);
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> path.toFile().delete()));
+			System.err.println("Listening on " + path);
+
+			ExecutorService pool = Executors.newCachedThreadPool();
+			while(true) {
+				SocketChannel client = server.accept();
+				pool.submit(() -> handle(client));
+			}
+		}
+		catch(IOException e) {
+			System.err.println(e.getMessage());
+			return 1;
+		}
+	}
+
+
+	// Create dir with mode 0700, or check that the existing one belongs to this user and has that mode
+	static void privateDirectory(Path dir) throws IOException {
+		if(!Files.exists(dir, LinkOption.NOFOLLOW_LINKS))
+			Files.createDirectory(dir, PosixFilePermissions.asFileAttribute(DIRECTORY_MODE));
+		UserPrincipal user = dir.getFileSystem().getUserPrincipalLookupService().lookupPrincipalByName(System.getProperty("user.name"));
+		if(!Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS) || !Files.getOwner(dir, LinkOption.NOFOLLOW_LINKS).equals(user) ||
+				!Files.getPosixFilePermissions(dir, LinkOption.NOFOLLOW_LINKS).equals(DIRECTORY_MODE))
+			throw new IOException(dir + " is not a directory owned by " + user.getName() + " with mode 0700");
+	}
+
+
+	// Whether a server accepts connections on the socket file at path
+	static boolean listening(Path path) {
+		if(!Files.exists(path))
+			return false;
+		try {
+			SocketChannel.open(UnixDomainSocketAddress.of(path)).close();
+			return true;
+		}
+		catch(IOException e) {
+			return false;
+		}
+	}
+
+
+	static Void handle(SocketChannel client) throws IOException {
+		try(client) {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(client)));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(client)));
+
+			File cwd = new File(in.readUTF());
+			List<String> args = new ArrayList<>();
+			for(int i = in.readInt(); i > 0; i--)
+				args.add(in.readUTF());
+
+			Map<String, byte[]> sources = new LinkedHashMap<>();
+			for(int i = in.readInt(); i > 0; i--) {
+				String name = in.readUTF();
+				byte[] text = new byte[in.readInt()];
+				in.readFully(text);
+				sources.put(name, text);
+			}
+
+			ByteArrayOutputStream compileOut = new ByteArrayOutputStream();
+			ByteArrayOutputStream compileErr = new ByteArrayOutputStream();
+			int status = Main.run(args, sources, cwd, new PrintStream(compileOut, true), new PrintStream(compileErr, true), new ArrayList<>());
+
+			writeBytes(out, compileOut.toByteArray());
+			writeBytes(out, compileErr.toByteArray());
+			out.writeInt(status);
+			out.flush();
+		}
+		return null;
+	}
+
+	// Send a compile request for args to the server, file "-" is sent as inline source read from stdin
+	public static int request(String socket, List<String> args, PrintStream out, PrintStream err) {
+		try(SocketChannel server = connect(socket)) {
+			DataOutputStream request = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(server)));
+			DataInputStream response = new DataInputStream(new BufferedInputStream(Channels.newInputStream(server)));
+
+			boolean stdin = args.remove("-");
+			request.writeUTF(System.getProperty("user.dir"));
+			request.writeInt(args.size());
+			for(String arg : args)
+				request.writeUTF(arg);
+
+			request.writeInt(stdin ? 1 : 0);
+			if(stdin) {
+				request.writeUTF("stdin.java");
+				writeBytes(request, System.in.readAllBytes());
+			}
+			request.flush();
+
+			out.write(readBytes(response));
+			out.flush();
+			err.write(readBytes(response));
+			err.flush();
+			return response.readInt();
+		}
+		catch(IOException e) {
+			err.println("Cannot reach compile server at " + socket + ": " + e.getMessage());
+			return 1;
+		}
+	}
+
+
+	// Open a connection to the server, checking first that another user did not set up the default socket
+	static SocketChannel connect(String socket) throws IOException {
+		if(socket.equals(DEFAULT_SOCKET))
+			privateDirectory(Paths.get(socket).getParent());
+		return SocketChannel.open(UnixDomainSocketAddress.of(socket));
+	}
+
+
+	static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+
+	static byte[] readBytes(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return bytes;
+	}
+}
@@ -0,0 +1,281 @@
+import java.io.*;
+import java.util.*;
+
+
+// Generator of large well-typed MiniJava programs for scalability testing
+//
+// Classes form inheritance chains of the given depth. Each class has fields of every type and
+// methods with loops, conditionals, array accesses and calls to methods declared before them or
+// inherited. Every class overrides run(int), which main calls on the last class. Calls pass p0 - 1
+// and only happen while p0 is positive, so generated programs terminate quickly at any size.
+//
+// Usage: java Generator [-classes N] [-depth D] [-fields F] [-methods M] [-statements S]
+//                       [-nesting E] [-seed X] [-o file]
+public class Generator {
+	static final String[] FIELD_TYPES = { "int", "boolean", "int[]", "class" };
+	static final int ARRAY_SIZE = 16;		// Size of local arrays, indices are literals below it
+	static final int MAX_BLOCK_DEPTH = 3;	// Deepest nesting of if and while statements
+	static final int CALL_DEPTH = 2;		// Depth of the call tree at run time
+
+	int classes, depth, fields, methods, statements, nesting;
+	Random random;
+	PrintWriter out;
+
+	// Int and boolean fields visible in the class being generated, own and inherited
+	List<String> intFields, booleanFields;
+	String currMethod;
+	int currClass, currIndex, parentClass;
+
+	public Generator(int classes, int depth, int fields, int methods, int statements, int nesting, long seed) {
+		this.classes = Math.max(1, classes);
+		this.depth = Math.max(1, depth);
+		this.fields = fields;
+		this.methods = Math.max(1, methods);
+		this.statements = statements;
+		this.nesting = nesting;
+		random = new Random(seed);
+	}
+
+
+	public void generate(Writer dest) {
+		out = new PrintWriter(dest);
+		out.println("class Generated {");
+		out.println("\tpublic static void main(String[] args) {");
+		out.println("\t\tSystem.out.println(new C" + (classes - 1) + "().run(" + CALL_DEPTH + "));");
+		out.println("\t}");
+		out.println("}");
+
+		for(int i = 0; i < classes; i++)
+			generateClass(i);
+
+		out.flush();
+	}
+
+
+	int parent(int i) {
+		return (i % depth == 0) ? -1 : i - 1;
+	}
+
+
+	void generateClass(int i) {
+		currClass = i;
+		parentClass = parent(i);
+		intFields = new ArrayList<>();
+		booleanFields = new ArrayList<>();
+		for(int c = i; c >= 0; c = parent(c))
+			for(int k = 0; k < fields; k++)
+				if(FIELD_TYPES[k % 4].equals("int"))
+					intFields.add("f" + c + "_" + k);
+				else if(FIELD_TYPES[k % 4].equals("boolean"))
+					booleanFields.add("f" + c + "_" + k);
+
+		out.println();
+		out.println("class C" + i + (parentClass >= 0 ? " extends C" + parentClass : "") + " {");
+		for(int k = 0; k < fields; k++) {
+			String type = FIELD_TYPES[k % 4];
+			out.println("\t" + (type.equals("class") ? "C" + random.nextInt(classes) : type) + " f" + i + "_" + k + ";");
+		}
+
+		for(int k = 0; k < methods; k++)
+			generateMethod(k);
+
+		out.println();
+		out.println("\tpublic int run(int x) {");
+		out.println("\t\treturn (this.m" + i + "_" + (methods - 1) + "(x, true)) + x;");
+		out.println("\t}");
+		out.println("}");
+	}
+
+
+	void generateMethod(int k) {
+		currMethod = "m" + currClass + "_" + k;
+		currIndex = k;
+		out.println();
+		out.println("\tpublic int " + currMethod + "(int p0, boolean p1) {");
+		out.println("\t\tint x0;\n\t\tint x1;\n\t\tboolean b0;\n\t\tint[] arr;");
+		for(int c = 0; c < MAX_BLOCK_DEPTH; c++)
+			out.println("\t\tint c" + c + ";");
+
+		out.println("\t\tarr = new int[" + ARRAY_SIZE + "];\n\t\tx0 = p0;\n\t\tx1 = 0;\n\t\tb0 = p1;");
+		generateStatements(statements, 0, "\t\t");
+		out.println("\t\treturn " + intExpr(nesting) + ";");
+		out.println("\t}");
+	}
+
+	// Emit count statements in total, including the ones nested in blocks
+	void generateStatements(int count, int block, String indent) {
+		while(count > 0) {
+			int choice = random.nextInt(block < MAX_BLOCK_DEPTH && count > 2 ? 8 : 6);
+			count--;
+			switch(choice) {
+				case 0:
+					out.println(indent + "x" + random.nextInt(2) + " = " + intExpr(nesting) + ";");
+					break;
+				case 1:
+					out.println(indent + "b0 = " + booleanExpr(nesting) + ";");
+					break;
+				case 2:
+					if(!intFields.isEmpty())
+						out.println(indent + pick(intFields) + " = " + intExpr(nesting) + ";");
+					else if(!booleanFields.isEmpty())
+						out.println(indent + pick(booleanFields) + " = " + booleanExpr(nesting) + ";");
+					else
+						out.println(indent + "x0 = " + intExpr(nesting) + ";");
+					break;
+				case 3:
+					out.println(indent + "arr[" + random.nextInt(ARRAY_SIZE) + "] = " + intExpr(nesting) + ";");
+					break;
+				case 4:
+					out.println(indent + "System.out.println(" + intExpr(nesting) + ");");
+					break;
+				case 5:		// Call guarded by the remaining call depth
+					out.println(indent + "if (0 < p0) x1 = " + call() + "; else x1 = x0;");
+					break;
+				case 6: {		// if statement
+					int inner = 1 + random.nextInt(Math.min(count, 4));
+					int thenCount = (inner + 1) / 2;
+					count -= inner;
+					out.println(indent + "if (" + booleanExpr(nesting) + ") {");
+					generateStatements(thenCount, block + 1, indent + "\t");
+					out.println(indent + "} else {");
+					generateStatements(inner - thenCount, block + 1, indent + "\t");
+					out.println(indent + "}");
+					break;
+				}
+				default: {		// while statement with a bounded counter
+					int inner = 1 + random.nextInt(Math.min(count, 4));
+					count -= inner;
+					String counter = "c" + block;
+					out.println(indent + counter + " = 0;");
+					out.println(indent + "while (" + counter + " < " + (1 + random.nextInt(4)) + ") {");
+					generateStatements(inner, block + 1, indent + "\t");
+					out.println(indent + "\t" + counter + " = " + counter + " + 1;");
+					out.println(indent + "}");
+				}
+			}
+		}
+	}
+
+	// Call to a method declared earlier in this class or inherited, or an int expression if there is none
+	String call() {
+		List<String> callees = new ArrayList<>();
+		for(int j = 0; j < currIndex; j++)
+			callees.add("m" + currClass + "_" + j);
+		if(parentClass >= 0)
+			callees.add("m" + parentClass + "_" + random.nextInt(methods));
+
+		if(callees.isEmpty())
+			return intExpr(nesting);
+
+		return "this." + pick(callees) + "(p0 - 1, " + booleanExpr(nesting - 1) + ")";
+	}
+
+
+	String intExpr(int depth) {
+		if(depth <= 0)
+			return intPrimary(0);
+
+		switch(random.nextInt(6)) {
+			case 0:
+				return intPrimary(depth - 1) + " + " + intPrimary(depth - 1);
+			case 1:
+				return intPrimary(depth - 1) + " - " + intPrimary(depth - 1);
+			case 2:
+				return intPrimary(depth - 1) + " * " + intPrimary(depth - 1);
+			case 3:
+				return "arr[" + random.nextInt(ARRAY_SIZE) + "]";
+			case 4:
+				return "arr.length";
+			default:
+				return intPrimary(depth - 1);
+		}
+	}
+
+
+	String intPrimary(int depth) {
+		if(depth > 0 && random.nextInt(3) == 0)
+			return "(" + intExpr(depth) + ")";
+
+		switch(random.nextInt(5)) {
+			case 0:
+				return "" + random.nextInt(100);
+			case 1:
+				return "p0";
+			case 2:
+				return intFields.isEmpty() ? "x1" : pick(intFields);
+			default:
+				return "x" + random.nextInt(2);
+		}
+	}
+
+
+	String booleanExpr(int depth) {
+		if(depth <= 0)
+			return booleanPrimary(0);
+
+		switch(random.nextInt(4)) {
+			case 0:
+				return intPrimary(depth - 1) + " < " + intPrimary(depth - 1);
+			case 1:
+				return clause(depth - 1) + " && " + clause(depth - 1);
+			case 2:
+				return "!" + clause(depth - 1);
+			default:
+				return booleanPrimary(depth - 1);
+		}
+	}
+
+
+	String clause(int depth) {
+		return (random.nextInt(4) == 0) ? "!" + booleanPrimary(depth) : booleanPrimary(depth);
+	}
+
+
+	String booleanPrimary(int depth) {
+		if(depth > 0 && random.nextInt(3) == 0)
+			return "(" + booleanExpr(depth) + ")";
+
+		switch(random.nextInt(5)) {
+			case 0:
+				return random.nextBoolean() ? "true" : "false";
+			case 1:
+				return "p1";
+			case 2:
+				return booleanFields.isEmpty() ? "b0" : pick(booleanFields);
+			default:
+				return "b0";
+		}
+	}
+
+
+	String pick(List<String> names) {
+		return names.get(random.nextInt(names.size()));
+	}
+
+
+	public static void main(String[] args) throws IOException {
+		int classes = 10, depth = 3, fields = 4, methods = 4, statements = 10, nesting = 3;
+		long seed = 1;
+		String dest = null;
+
+		for(int i = 0; i + 1 < args.length; i += 2)
+			switch(args[i]) {
+				case "-classes":	classes = Integer.parseInt(args[i + 1]); break;
+				case "-depth":		depth = Integer.parseInt(args[i + 1]); break;
+				case "-fields":		fields = Integer.parseInt(args[i + 1]); break;
+				case "-methods":	methods = Integer.parseInt(args[i + 1]); break;
+				case "-statements":	statements = Integer.parseInt(args[i + 1]); break;
+				case "-nesting":	nesting = Integer.parseInt(args[i + 1]); break;
+				case "-seed":		seed = Long.parseLong(args[i + 1]); break;
+				case "-o":			dest = args[i + 1]; break;
+				default:
+					System.err.println("Unknown option '" + args[i] + "'");
+					System.exit(1);
+			}
+
+		Generator generator = new Generator(classes, depth, fields, methods, statements, nesting, seed);
+		try(Writer writer = new BufferedWriter((dest == null) ? new OutputStreamWriter(System.out) : new FileWriter(dest), 1 << 16)) {
+			generator.generate(writer);
+		}
+	}
+}
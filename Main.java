@@ -1,44 +1,278 @@
 import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
 import visitors.*;
+import jvm.ProgramLoader;
 import syntaxtree.*;
 
 
 public class Main {
+	static final String VERSION = "1.3";		// Part of cache keys, change whenever generated code changes
+
 	public static void main(String[] args) {
-		if(args.length == 0) {
-			System.err.println("Usage: java Main [file1] [file2] ... [fileN]");
-			System.exit(1);
+		List<String> arguments = new ArrayList<>(Arrays.asList(args));
+		String socket = CompileServer.DEFAULT_SOCKET;
+
+		int i = arguments.indexOf("--socket");		// --socket PATH: compile server address
+		if(i >= 0 && i + 1 < arguments.size()) {
+			socket = arguments.get(i + 1);
+			arguments.subList(i, i + 2).clear();
+		}
+
+		int status;
+		if(arguments.remove("--server"))			// Keep running and compile files sent by clients
+			status = CompileServer.serve(socket);
+		else if(arguments.remove("--connect"))		// Delegate compilation to a running server
+			status = CompileServer.request(socket, arguments, System.out, System.err);
+		else
+			status = run(arguments, new HashMap<>(), new File(System.getProperty("user.dir")), System.out, System.err, new ArrayList<>());
+
+		if(status != 0)
+			System.exit(status);
+	}
+
+	// Compile files named in args, sources holds inline source text by file name, paths are relative to cwd
+	// Paths of the generated LLVM files are added to generated, returns the highest exit status of the programs run
+	static int run(List<String> args, Map<String, byte[]> sources, File cwd, PrintStream out, PrintStream err, List<String> generated) {
+		List<String> files = new ArrayList<>();
+		int threads = 1;
+		String cacheDir = null;
+		long cacheSize = 256;
+		String timeReport = null;
+		CodegenOptions options = new CodegenOptions();
+
+		for(int i = 0; i < args.size(); i++)
+			if(args.get(i).equals("-j"))		// -j [N]: compile files on N worker threads
+				threads = (i + 1 < args.size() && args.get(i + 1).matches("\\d+")) ? Integer.parseInt(args.get(++i)) : 0;
+			else if(args.get(i).matches("-j\\d+"))
+				threads = Integer.parseInt(args.get(i).substring(2));
+			else if(args.get(i).equals("--cache") && i + 1 < args.size())		// --cache DIR: reuse results of unchanged files
+				cacheDir = args.get(++i);
+			else if(args.get(i).equals("--cache-size") && i + 1 < args.size()) {	// --cache-size MB: cache directory limit
+				if(!args.get(i + 1).matches("\\d{1,12}"))
+					return usage("Invalid cache size '" + args.get(i + 1) + "'", err);
+				cacheSize = Long.parseLong(args.get(++i));
+			}
+			else if(args.get(i).matches("--(time-report|stats)(=.*)?"))			// --time-report[=json|FILE.json]: time and memory of each phase
+				timeReport = args.get(i).contains("=") ? args.get(i).substring(args.get(i).indexOf('=') + 1) : "";
+			else if(args.get(i).matches("--run(=tree)?")) {		// --run[=tree]: interpret programs instead of generating code
+				options.interpret = true;
+				options.walkTree = args.get(i).endsWith("=tree");
+			}
+			else if(args.get(i).startsWith("-finline-limit=") && !args.get(i).matches("-finline-limit=\\d{1,9}"))
+				return usage("Invalid inline limit '" + args.get(i).substring("-finline-limit=".length()) + "'", err);
+			else if(!options.parse(args.get(i)))		// -O, -f[no-]OPTION: code generation passes
+				files.add(args.get(i));
+
+		files.addAll(sources.keySet());
+		if(files.isEmpty())
+			return usage(null, err);
+		if(options.unsupported() != null) {
+			err.println(options.unsupported());
+			return 1;
+		}
+
+		if(threads <= 0)		// -j without a count uses every available core
+			threads = Runtime.getRuntime().availableProcessors();
+
+		CompileCache cache = null;
+		if(cacheDir != null) {
+			File dir = new File(cacheDir);
+			cache = new CompileCache(dir.isAbsolute() ? dir : new File(cwd, cacheDir), cacheSize << 20, options.toString());
+		}
+
+		TimeReport report = (timeReport != null) ? new TimeReport() : null;
+		int status = 0;
+		if(threads == 1 || files.size() == 1)
+			for(String file : files) {
+				Result result = compile(file, sources.get(file), cwd, options, cache, report, out, err);
+				if(result.dest != null)
+					generated.add(result.dest);
+				status = Math.max(status, result.status);
+			}
+		else
+			status = compileParallel(files, sources, cwd, options, cache, report, Math.min(threads, files.size()), out, err, generated);
+
+		if(report != null)
+			printReport(report, timeReport, cwd, err);
+
+		return status;
+	}
+
+	// Print what is wrong with the arguments, if given, and the usage line, returns the exit status
+	static int usage(String problem, PrintStream err) {
+		if(problem != null)
+			err.println(problem);
+		err.println("Usage: java Main [--server | --connect] [--socket PATH] [-j N] [--cache DIR] [--cache-size MB] [--time-report[=json|FILE.json]] [--run[=tree]] [-O] [-fbounds-check-elim] [-fssa] [-ffold-constants] [-fdevirtualize] [-finline[-limit=N]] [-fpack-fields] [-fescape-analysis] [-farena] [-fbuffered-output] [-fpack-booleans] [-fir] [-fgc] [-fjvm] [file1] [file2] ... [fileN]");
+		return 1;
+	}
+
+	// Outcome of compiling one file
+	static class Result {
+		static final Result NONE = new Result(null, 0);		// Errors, or nothing generated
+
+		String dest;		// Path of the generated code
+		int status;			// Exit status of the program run by -fjvm or --run
+
+		Result(String dest, int status) {
+			this.dest = dest;
+			this.status = status;
+		}
+	}
+
+	// Print the time report as a table, as JSON with format "json", or write JSON to the file named by format
+	static void printReport(TimeReport report, String format, File cwd, PrintStream err) {
+		if(format.isEmpty())
+			report.printTable(err);
+		else if(format.equals("json"))
+			report.printJson(err);
+		else {
+			File file = new File(format);
+			try(PrintStream json = new PrintStream(new FileOutputStream(file.isAbsolute() ? file : new File(cwd, format)))) {
+				report.printJson(json);
+			}
+			catch(IOException e) {
+				err.println(e.getMessage() + "\n");
+			}
 		}
+	}
+
+	// Output of a file compiled on a worker thread
+	static class Output {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ByteArrayOutputStream err = new ByteArrayOutputStream();
+		Result result;
+	}
 
-		for(String file : args)
+	// Compile files on a worker pool, reporting each file's output in argument order
+	static int compileParallel(List<String> files, Map<String, byte[]> sources, File cwd, CodegenOptions options, CompileCache cache, TimeReport report, int threads,
+								PrintStream out, PrintStream err, List<String> generated) {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<Output>> results = new ArrayList<>();
+
+		for(String file : files)
+			results.add(pool.submit(() -> {
+				Output output = new Output();
+				output.result = compile(file, sources.get(file), cwd, options, cache, report, new PrintStream(output.out, true), new PrintStream(output.err, true));
+				return output;
+			}));
+
+		pool.shutdown();
+		int status = 0;
+		for(Future<Output> result : results)
 			try {
-				System.out.println("\u001B[1;4m" + file + "\u001B[0m:");
-
-				FileInputStream stream = new FileInputStream(file);
-				MiniJavaParser parser = new MiniJavaParser(stream);
-				Node root = parser.Goal();
-				// Create Symbol table and check declarations
-				DeclarationVisitor v1 = new DeclarationVisitor();
-				root.accept(v1, null);
-				// Check types
-				TypeCheckVisitor v2 = new TypeCheckVisitor(v1.classes);
-				root.accept(v2, null);
-				// Print Offsets
-				v2.classes.printOffsets();
-
-				// Translate to LLVM
-				LLVM_Visitor v3 = new LLVM_Visitor(v2.classes);
-				root.accept(v3, null);
-
-				File dir = new File("llvm");
-				if (!dir.exists()) dir.mkdirs();	// if llvm directory does not exist create it
-				// Store generated LLVM code to ./llvm/[fileName].ll
-				v3.emit("llvm/" + file.substring(file.lastIndexOf("/") + 1, file.indexOf(".")) + ".ll");
-				// v3.emit(null);
-				stream.close();
-			}
-			catch(Exception e) {
-				System.err.println(e.getMessage() + "\n");
+				Output output = result.get();
+				out.print(output.out);
+				out.flush();
+				err.print(output.err);
+				err.flush();
+				if(output.result.dest != null)
+					generated.add(output.result.dest);
+				status = Math.max(status, output.result.status);
 			}
+			catch(InterruptedException | ExecutionException e) {
+				err.println(e.getMessage() + "\n");
+			}
+		return status;
+	}
+
+	// Compile one file (or its inline source text), returning the path of the generated code and the status of the program run
+	static Result compile(String file, byte[] source, File cwd, CodegenOptions options, CompileCache cache, TimeReport report, PrintStream out, PrintStream err) {
+		out.println("\u001B[1;4m" + file + "\u001B[0m:");
+
+		File path = new File(file);
+		String name = path.getName();
+		String base = name.contains(".") ? name.substring(0, name.indexOf(".")) : name;
+		File dest = options.jvm ? new File(new File(cwd, "classes"), base) : new File(new File(cwd, "llvm"), base + ".ll");
+		if(source == null)
+			try(InputStream stream = new FileInputStream(path.isAbsolute() ? path : new File(cwd, file))) {
+				source = stream.readAllBytes();
+			}
+			catch(IOException e) {
+				err.println(e.getMessage() + "\n");
+				return Result.NONE;
+			}
+
+		TimeReport.FileTimes times = (report != null) ? report.start(file) : TimeReport.FileTimes.NONE;
+		if(cache == null || options.jvm || options.interpret)		// The program runs on every compilation, its results are not cached
+			return translate(source, dest, options, times, out, err);
+
+		dest.getParentFile().mkdirs();
+		String key = cache.key(source);
+		Boolean compiled = cache.restore(key, dest, out, err);
+		if(compiled != null) {
+			times.cached = true;
+			return compiled ? new Result(dest.getPath(), 0) : Result.NONE;
+		}
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		ByteArrayOutputStream errors = new ByteArrayOutputStream();
+		Result result = translate(source, dest, options, times, new PrintStream(output, true), new PrintStream(errors, true));
+		cache.store(key, output.toByteArray(), errors.toByteArray(), (result.dest == null) ? null : dest);
+		out.print(output);
+		err.print(errors);
+		return result;
+	}
+
+	// Check source and generate its LLVM code in dest (its class files with -fjvm), recording the time of each phase in times
+	static Result translate(byte[] source, File dest, CodegenOptions options, TimeReport.FileTimes times, PrintStream out, PrintStream err) {
+		try {
+			MiniJavaParser parser = new MiniJavaParser(new ByteArrayInputStream(source));
+			Node root = parser.Goal();
+			times.mark(TimeReport.PARSE);
+			// Create Symbol table and check declarations
+			DeclarationVisitor v1 = new DeclarationVisitor();
+			root.accept(v1, null);
+			times.mark(TimeReport.DECLARATIONS);
+			// Check types
+			TypeCheckVisitor v2 = new TypeCheckVisitor(v1.classes);
+			root.accept(v2, null);
+			times.mark(TimeReport.TYPECHECK);
+			// Print Offsets
+			v2.classes.printOffsets(out);
+			times.mark(TimeReport.OFFSETS);
+
+			if(options.interpret && options.walkTree)		// Nothing is generated
+				return new Result(null, new Interpreter(v2.classes, v2.annotations).run((Goal) root, out));
+			if(options.interpret)
+				return new Result(null, new ClosureCompiler(v2.classes, v2.annotations).run((Goal) root, out));
+			if(options.jvm)
+				return runJvm(root, v2, dest, times, out);
+
+			File dir = dest.getParentFile();
+			if (!dir.exists()) dir.mkdirs();	// if llvm directory does not exist create it
+			// Translate to LLVM, streaming each method to ./llvm/[fileName].ll as it is generated
+			try(Writer destFile = times.timed(new BufferedWriter(new FileWriter(dest), 1 << 16))) {
+				times.mark(TimeReport.EMIT);
+				if(options.ir)
+					root.accept(new IRGenerator(v2.classes, v2.annotations, options, destFile), null);
+				else
+					root.accept(new LLVM_Visitor(v2.classes, v2.annotations, options, destFile), null);
+			}
+			return new Result(dest.getPath(), 0);
+		}
+		catch(Exception e) {
+			err.println(e.getMessage() + "\n");
+			return Result.NONE;
+		}
+	}
+
+	// Generate the class files of a checked program in directory dest and run it in-process
+	static Result runJvm(Node root, TypeCheckVisitor checked, File dest, TimeReport.FileTimes times, PrintStream out) throws Exception {
+		JVMGenerator generator = new JVMGenerator(checked.classes, checked.annotations);
+		root.accept(generator, null);
+		times.mark(TimeReport.JVM);
+
+		for(Map.Entry<String, byte[]> classFile : generator.classFiles.entrySet()) {
+			File file = new File(dest, classFile.getKey() + ".class");
+			file.getParentFile().mkdirs();
+			try(OutputStream stream = new FileOutputStream(file)) {
+				stream.write(classFile.getValue());
+			}
+		}
+		times.mark(TimeReport.EMIT);
+
+		int status = new ProgramLoader(generator.classFiles).run(generator.mainClass, out);
+		return new Result(dest.getPath(), status);
 	}
 }
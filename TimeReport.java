@@ -0,0 +1,154 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+
+// Wall time, CPU time and allocated bytes of every compiler phase, per input file
+//
+// Each file is compiled on a single thread, so its CPU time and allocations are read from that
+// thread's counters. With -j the wall times of files overlap and their sum exceeds the elapsed time.
+public class TimeReport {
+	static final String[] PHASES = { "parse", "declarations", "typecheck", "offsets", "llvm", "jvm", "emit" };
+	static final int PARSE = 0, DECLARATIONS = 1, TYPECHECK = 2, OFFSETS = 3, LLVM = 4, JVM = 5, EMIT = 6;
+
+	static com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	// Measurements of one file, each phase is charged with everything since the previous mark
+	public static class FileTimes {
+		static final FileTimes NONE = new FileTimes(null);		// Used when no report is requested
+
+		String file;
+		boolean cached;
+		long[] wall = new long[PHASES.length], cpu = new long[PHASES.length], allocated = new long[PHASES.length];
+		long lastWall, lastCpu, lastAllocated;
+
+		FileTimes(String file) {
+			this.file = file;
+			if(file != null)
+				mark(-1);
+		}
+
+
+		public void mark(int phase) {
+			if(file == null)
+				return;
+
+			long thread = Thread.currentThread().getId();
+			long now = System.nanoTime(), cpuNow = threads.getThreadCpuTime(thread), allocatedNow = threads.getThreadAllocatedBytes(thread);
+			if(phase >= 0) {
+				wall[phase] += now - lastWall;
+				cpu[phase] += cpuNow - lastCpu;
+				allocated[phase] += allocatedNow - lastAllocated;
+			}
+			lastWall = now;
+			lastCpu = cpuNow;
+			lastAllocated = allocatedNow;
+		}
+
+		// Charge time spent writing to out to the emit phase, and the time between writes to llvm
+		// The code generators write one whole function at a time, which keeps the cost of the marks small
+		public Writer timed(Writer out) {
+			if(file == null)
+				return out;
+
+			return new FilterWriter(out) {
+				public void write(char[] chars, int offset, int length) throws IOException {
+					mark(LLVM);
+					out.write(chars, offset, length);
+					mark(EMIT);
+				}
+
+				public void write(String s, int offset, int length) throws IOException {
+					mark(LLVM);
+					out.write(s, offset, length);
+					mark(EMIT);
+				}
+
+				public void write(int c) throws IOException {
+					mark(LLVM);
+					out.write(c);
+					mark(EMIT);
+				}
+
+				public void close() throws IOException {
+					mark(LLVM);
+					out.close();
+					mark(EMIT);
+				}
+			};
+		}
+	}
+
+	List<FileTimes> files = new ArrayList<>();
+
+
+	public synchronized FileTimes start(String file) {
+		FileTimes times = new FileTimes(file);
+		files.add(times);
+		return times;
+	}
+
+
+	public void printTable(PrintStream out) {
+		long[] wall = new long[PHASES.length], cpu = new long[PHASES.length], allocated = new long[PHASES.length];
+		long totalWall = 0, totalCpu = 0, totalAllocated = 0;
+		int cached = 0;
+		for(FileTimes f : files) {
+			for(int i = 0; i < PHASES.length; i++) {
+				wall[i] += f.wall[i];
+				cpu[i] += f.cpu[i];
+				allocated[i] += f.allocated[i];
+			}
+			if(f.cached)
+				cached++;
+		}
+		for(int i = 0; i < PHASES.length; i++) {
+			totalWall += wall[i];
+			totalCpu += cpu[i];
+			totalAllocated += allocated[i];
+		}
+
+		out.println("Time report: " + files.size() + " files" + (cached > 0 ? " (" + cached + " cached)" : ""));
+		out.printf("%-14s %12s %12s %12s %8s%n", "Phase", "wall ms", "cpu ms", "alloc MB", "wall %");
+		for(int i = 0; i < PHASES.length; i++)
+			out.printf("%-14s %12.3f %12.3f %12.3f %7.1f%%%n", PHASES[i], wall[i] / 1e6, cpu[i] / 1e6, allocated[i] / 1048576.0,
+					   (totalWall > 0) ? 100.0 * wall[i] / totalWall : 0.0);
+		out.printf("%-14s %12.3f %12.3f %12.3f %7.1f%%%n", "total", totalWall / 1e6, totalCpu / 1e6, totalAllocated / 1048576.0, (totalWall > 0) ? 100.0 : 0.0);
+	}
+
+
+	public void printJson(PrintStream out) {
+		out.println("{\"phases\": [" + String.join(", ", quoted(Arrays.asList(PHASES))) + "], \"files\": [");
+		for(int f = 0; f < files.size(); f++) {
+			FileTimes times = files.get(f);
+			out.print("\t{\"file\": " + quote(times.file) + ", \"cached\": " + times.cached + ", \"phases\": {");
+			for(int i = 0; i < PHASES.length; i++)
+				out.print((i > 0 ? ", " : "") + quote(PHASES[i]) + ": {\"wall_ns\": " + times.wall[i] + ", \"cpu_ns\": " + times.cpu[i]
+						  + ", \"alloc_bytes\": " + times.allocated[i] + "}");
+			out.println("}}" + (f + 1 < files.size() ? "," : ""));
+		}
+		out.println("]}");
+	}
+
+
+	static List<String> quoted(List<String> strings) {
+		List<String> result = new ArrayList<>();
+		for(String s : strings)
+			result.add(quote(s));
+		return result;
+	}
+
+
+	static String quote(String s) {
+		StringBuilder result = new StringBuilder("\"");
+		for(char c : s.toCharArray())
+			if(c == '"' || c == '\\')
+				result.append('\\').append(c);
+			else if(c < 0x20)
+				result.append(String.format("\\u%04x", (int) c));
+			else
+				result.append(c);
+
+		return result.append('"').toString();
+	}
+}
@@ -0,0 +1,34 @@
+class EntryLabel {
+	public static void main(String[] entry) {
+		System.out.println(new Labels().Count(3));
+		System.out.println(new Labels().Sum(4));
+	}
+}
+
+// Variables named like the entry block of the generated functions
+class Labels {
+	public int Count(int entry) {
+		int total;
+		total = 0;
+		while(0 < entry) {
+			total = total + entry;
+			entry = entry - 1;
+		}
+		return total;
+	}
+
+	public int Sum(int n) {
+		int entry;
+		int i;
+		entry = 0;
+		i = 0;
+		while(i < n) {
+			if(i < 2)
+				entry = entry + 1;
+			else
+				entry = entry + i;
+			i = i + 1;
+		}
+		return entry;
+	}
+}
@@ -0,0 +1,42 @@
+class OverrideSlot {
+	public static void main(String[] a) {
+		A x;
+		x = new B();
+		System.out.println(x.first());
+		System.out.println(x.second());
+		x = new C();
+		System.out.println(x.first());
+		System.out.println(x.second());
+	}
+}
+
+class A {
+	public int first() {
+		return 1;
+	}
+	public int second() {
+		return 2;
+	}
+}
+
+// Declares a new method before overriding first, which must keep slot 0
+class B extends A {
+	public int third() {
+		return 30;
+	}
+	public int first() {
+		return 10;
+	}
+}
+
+// Overrides methods of both ancestors
+class C extends B {
+	public int third() {
+		return 300;
+	}
+	public int second() {
+		int t;
+		t = this.third();
+		return 200 + t;
+	}
+}
@@ -0,0 +1,36 @@
+package ir;
+
+import java.util.*;
+
+
+// Instructions ending with a single terminator, phis come first
+public class BasicBlock {
+	public String label;			// Assigned by the printer when null
+	public final String comment;
+	public final List<Instruction> instructions = new ArrayList<>();
+
+	BasicBlock(String comment) {
+		this.comment = comment;
+	}
+
+
+	public Instruction terminator() {
+		Instruction last = instructions.isEmpty() ? null : instructions.get(instructions.size() - 1);
+		return (last != null && last.isTerminator()) ? last : null;
+	}
+
+
+	public List<BasicBlock> successors() {
+		Instruction last = terminator();
+		return (last == null) ? Collections.emptyList() : last.blocks;
+	}
+
+
+	public List<Instruction> phis() {
+		List<Instruction> phis = new ArrayList<>();
+		for(Instruction inst : instructions)
+			if(inst.op == Instruction.Op.PHI)
+				phis.add(inst);
+		return phis;
+	}
+}
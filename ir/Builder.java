@@ -0,0 +1,108 @@
+package ir;
+
+import ir.Instruction.Op;
+
+
+// Appends instructions to the current block of a function, creating the registers they define
+public class Builder {
+	public final Function function;
+	public BasicBlock block;
+
+	public Builder(Function function) {
+		this.function = function;
+		block = function.addBlock(null);
+	}
+
+
+	public BasicBlock addBlock(String comment) {
+		return function.addBlock(comment);
+	}
+
+
+	Register append(Op op, IRType type, IRType allocated, Value... operands) {
+		Register result = (type == null || type == IRType.VOID) ? null : new Register(type, null);
+		block.instructions.add(new Instruction(op, result, allocated, operands));
+		return result;
+	}
+
+
+	public Register binary(Op op, Value left, Value right) {
+		IRType type = (op == Op.SLT || op == Op.ULT) ? IRType.BOOL : left.type;
+		return append(op, type, null, left, right);
+	}
+
+
+	public Register alloca(IRType type, String name) {
+		Register result = new Register(type.pointer(), name);
+		block.instructions.add(new Instruction(Op.ALLOCA, result, type));
+		return result;
+	}
+
+
+	public Register load(Value pointer) {
+		return append(Op.LOAD, pointer.type.pointee, null, pointer);
+	}
+
+
+	public void store(Value value, Value pointer) {
+		append(Op.STORE, null, null, value, pointer);
+	}
+
+	// Pointer to an element, the first index steps over whole pointees and the rest go into arrays
+	public Register gep(Value base, Value... indices) {
+		IRType type = base.type.pointee;
+		for(int i = 1; i < indices.length; i++)
+			type = type.element;
+
+		Value[] operands = new Value[indices.length + 1];
+		operands[0] = base;
+		System.arraycopy(indices, 0, operands, 1, indices.length);
+		return append(Op.GEP, type.pointer(), null, operands);
+	}
+
+
+	public Register bitcast(Value value, IRType type) {
+		return append(Op.BITCAST, type, null, value);
+	}
+
+	// Call through a function or a function pointer, null result for void functions
+	public Register call(Value callee, Value... args) {
+		Value[] operands = new Value[args.length + 1];
+		operands[0] = callee;
+		System.arraycopy(args, 0, operands, 1, args.length);
+		return append(Op.CALL, callee.type.pointee.returnType, null, operands);
+	}
+
+	// Phi with no incoming values yet
+	public Instruction phi(IRType type) {
+		Instruction phi = new Instruction(Op.PHI, new Register(type, null), null);
+		block.instructions.add(0, phi);
+		return phi;
+	}
+
+
+	public void br(BasicBlock target) {
+		block.instructions.add(new Instruction(Op.BR, null, null));
+		block.terminator().blocks.add(target);
+	}
+
+
+	public void condBr(Value cond, BasicBlock then, BasicBlock otherwise) {
+		block.instructions.add(new Instruction(Op.CONDBR, null, null, cond));
+		block.terminator().blocks.add(then);
+		block.terminator().blocks.add(otherwise);
+	}
+
+
+	public void ret(Value value) {
+		if(value == null)
+			append(Op.RET, null, null);
+		else
+			append(Op.RET, null, null, value);
+	}
+
+
+	public void unreachable() {
+		append(Op.UNREACHABLE, null, null);
+	}
+}
@@ -0,0 +1,30 @@
+package ir;
+
+
+// Integer or null pointer constant
+public class Constant extends Value {
+	public static final Constant TRUE = new Constant(IRType.BOOL, 1);
+	public static final Constant FALSE = new Constant(IRType.BOOL, 0);
+
+	public final long value;		// Sign extended, 0 for null
+
+	public Constant(IRType type, long value) {
+		super(type);
+		this.value = value;
+	}
+
+
+	public static Constant of(int value) {
+		return new Constant(IRType.INT, value);
+	}
+
+
+	public static Constant of(boolean value) {
+		return value ? TRUE : FALSE;
+	}
+
+
+	public String ref() {
+		return type.isPointer() ? "null" : String.valueOf(value);
+	}
+}
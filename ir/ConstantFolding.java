@@ -0,0 +1,73 @@
+package ir;
+
+import java.util.*;
+import ir.Instruction.Op;
+
+
+// Evaluate arithmetic and comparisons of constants, and turn branches on constants into jumps
+public class ConstantFolding implements Pass {
+	public boolean run(Function function) {
+		boolean changed = false;
+		for(BasicBlock block : function.blocks) {
+			Iterator<Instruction> it = block.instructions.iterator();
+			while(it.hasNext()) {
+				Instruction inst = it.next();
+				Constant value = fold(inst);
+				if(value != null) {
+					function.replaceUses(inst.result, value);
+					it.remove();
+					changed = true;
+				}
+			}
+
+			Instruction last = block.terminator();
+			if(last != null && last.op == Op.CONDBR && last.operands.get(0) instanceof Constant) {
+				BasicBlock taken = last.blocks.get(((Constant) last.operands.get(0)).value != 0 ? 0 : 1);
+				BasicBlock skipped = last.blocks.get(((Constant) last.operands.get(0)).value != 0 ? 1 : 0);
+				if(skipped != taken)
+					for(Instruction phi : skipped.phis())
+						phi.removeIncoming(block);
+
+				Instruction jump = new Instruction(Op.BR, null, null);
+				jump.blocks.add(taken);
+				block.instructions.set(block.instructions.size() - 1, jump);
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+
+	static Constant fold(Instruction inst) {
+		if(inst.operands.size() != 2 || !(inst.operands.get(0) instanceof Constant) || !(inst.operands.get(1) instanceof Constant))
+			return null;
+
+		long a = ((Constant) inst.operands.get(0)).value;
+		long b = ((Constant) inst.operands.get(1)).value;
+		switch(inst.op) {
+			case ADD:
+				return wrap(inst.result.type, a + b);
+			case SUB:
+				return wrap(inst.result.type, a - b);
+			case MUL:
+				return wrap(inst.result.type, a * b);
+			case XOR:
+				return wrap(inst.result.type, a ^ b);
+			case SLT:
+				return Constant.of(a < b);
+			case ULT:
+				return Constant.of(Integer.toUnsignedLong((int) a) < Integer.toUnsignedLong((int) b));
+			default:
+				return null;
+		}
+	}
+
+	// Result truncated to the width of type, null for types not folded
+	static Constant wrap(IRType type, long value) {
+		if(type == IRType.BOOL)
+			return Constant.of((value & 1) != 0);
+		else if(type == IRType.INT)
+			return Constant.of((int) value);
+		return null;
+	}
+}
@@ -0,0 +1,20 @@
+package ir;
+
+import java.util.*;
+
+
+// Remove instructions without side effects whose result is never used
+public class DeadCodeElimination implements Pass {
+	public boolean run(Function function) {
+		boolean changed = false;
+		boolean removed = true;
+		while(removed) {		// Removing an instruction may leave its operands unused
+			removed = false;
+			Map<Register, Integer> uses = function.uses();
+			for(BasicBlock block : function.blocks)
+				removed |= block.instructions.removeIf(inst -> inst.isPure() && !uses.containsKey(inst.result));
+			changed |= removed;
+		}
+		return changed;
+	}
+}
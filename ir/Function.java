@@ -0,0 +1,67 @@
+package ir;
+
+import java.util.*;
+
+
+// Function definition made of basic blocks, the first one is the entry, or a declaration without blocks
+public class Function extends Value {
+	public final String name;
+	public final IRType signature;
+	public final List<Register> parameters = new ArrayList<>();
+	public final List<BasicBlock> blocks = new ArrayList<>();
+
+	public Function(String name, IRType signature, String... parameterNames) {
+		super(signature.pointer());
+		this.name = name;
+		this.signature = signature;
+		for(int i = 0; i < parameterNames.length; i++)
+			parameters.add(new Register(signature.parameters.get(i), parameterNames[i]));
+	}
+
+
+	public BasicBlock addBlock(String comment) {
+		BasicBlock block = new BasicBlock(comment);
+		blocks.add(block);
+		return block;
+	}
+
+
+	public BasicBlock entry() {
+		return blocks.get(0);
+	}
+
+	// Blocks branching to each block, in block order
+	public Map<BasicBlock, List<BasicBlock>> predecessors() {
+		Map<BasicBlock, List<BasicBlock>> preds = new HashMap<>();
+		for(BasicBlock block : blocks)
+			preds.put(block, new ArrayList<>());
+		for(BasicBlock block : blocks)
+			for(BasicBlock succ : block.successors())
+				if(!preds.get(succ).contains(block))
+					preds.get(succ).add(block);
+		return preds;
+	}
+
+	// Number of operands reading each register
+	public Map<Register, Integer> uses() {
+		Map<Register, Integer> uses = new HashMap<>();
+		for(BasicBlock block : blocks)
+			for(Instruction inst : block.instructions)
+				for(Value operand : inst.operands)
+					if(operand instanceof Register)
+						uses.merge((Register) operand, 1, Integer::sum);
+		return uses;
+	}
+
+
+	public void replaceUses(Register reg, Value value) {
+		for(BasicBlock block : blocks)
+			for(Instruction inst : block.instructions)
+				Collections.replaceAll(inst.operands, reg, value);
+	}
+
+
+	public String ref() {
+		return "@" + name;
+	}
+}
@@ -0,0 +1,21 @@
+package ir;
+
+
+// Module level variable, its value is a pointer to the contents
+public class Global extends Value {
+	public final String name;
+	public final String initializer;		// LLVM constant the contents start as
+	public final boolean constant;
+
+	public Global(String name, IRType contents, String initializer, boolean constant) {
+		super(contents.pointer());
+		this.name = name;
+		this.initializer = initializer;
+		this.constant = constant;
+	}
+
+
+	public String ref() {
+		return "@" + name;
+	}
+}
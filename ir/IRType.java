@@ -0,0 +1,78 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+// Type of an IR value, printed as its LLVM type
+// Scalar and pointer types are canonical, array and function types compare by name
+public class IRType {
+	public static final IRType VOID = new IRType("void");
+	public static final IRType BOOL = new IRType("i1");
+	public static final IRType BYTE = new IRType("i8");
+	public static final IRType INT = new IRType("i32");
+	public static final IRType LONG = new IRType("i64");
+
+	public final String name;
+	public IRType pointee;				// Type pointed to, null unless a pointer
+	public IRType element;				// Element type of arrays
+	public IRType returnType;			// Return type of functions
+	public List<IRType> parameters;		// Parameter types of functions
+	public boolean varargs;
+	IRType pointer;						// Pointer to this type, created once
+
+	IRType(String name) {
+		this.name = name;
+	}
+
+
+	public IRType pointer() {
+		if(pointer == null) {
+			pointer = new IRType(name + "*");
+			pointer.pointee = this;
+		}
+		return pointer;
+	}
+
+
+	public static IRType array(int length, IRType element) {
+		IRType type = new IRType("[" + length + " x " + element + "]");
+		type.element = element;
+		return type;
+	}
+
+
+	public static IRType function(IRType returnType, List<IRType> parameters, boolean varargs) {
+		List<String> names = new ArrayList<>();
+		for(IRType param : parameters)
+			names.add(param.name);
+		if(varargs)
+			names.add("...");
+
+		IRType type = new IRType(returnType + " (" + String.join(", ", names) + ")");
+		type.returnType = returnType;
+		type.parameters = parameters;
+		type.varargs = varargs;
+		return type;
+	}
+
+
+	public boolean isPointer() {
+		return pointee != null;
+	}
+
+
+	public boolean equals(Object other) {
+		return other instanceof IRType && ((IRType) other).name.equals(name);
+	}
+
+
+	public int hashCode() {
+		return name.hashCode();
+	}
+
+
+	public String toString() {
+		return name;
+	}
+}
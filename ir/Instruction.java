@@ -0,0 +1,56 @@
+package ir;
+
+import java.util.*;
+
+
+// Three address instruction, operands and the register it defines are typed values
+public class Instruction {
+	public enum Op {
+		ADD("add"), SUB("sub"), MUL("mul"), XOR("xor"), SLT("icmp slt"), ULT("icmp ult"),
+		ALLOCA("alloca"), LOAD("load"), STORE("store"), GEP("getelementptr"), BITCAST("bitcast"), CALL("call"),
+		PHI("phi"), BR("br"), CONDBR("br"), RET("ret"), UNREACHABLE("unreachable");
+
+		public final String name;
+
+		Op(String name) {
+			this.name = name;
+		}
+	}
+
+	public final Op op;
+	public final Register result;							// Null for instructions without a value
+	public final List<Value> operands = new ArrayList<>();		// Call: callee first, phi: one per incoming block
+	public final List<BasicBlock> blocks = new ArrayList<>();	// Branch targets, incoming blocks of a phi
+	public final IRType type;								// Allocated type, null unless an alloca
+
+	public Instruction(Op op, Register result, IRType type, Value... operands) {
+		this.op = op;
+		this.result = result;
+		this.type = type;
+		this.operands.addAll(Arrays.asList(operands));
+	}
+
+
+	public boolean isTerminator() {
+		return op == Op.BR || op == Op.CONDBR || op == Op.RET || op == Op.UNREACHABLE;
+	}
+
+	// Can be removed when its result is unused
+	public boolean isPure() {
+		return result != null && op != Op.CALL;
+	}
+
+	public void addIncoming(Value value, BasicBlock block) {
+		operands.add(value);
+		blocks.add(block);
+	}
+
+	// Drop the incoming value of a phi from block
+	public void removeIncoming(BasicBlock block) {
+		int i = blocks.indexOf(block);
+		if(i >= 0) {
+			blocks.remove(i);
+			operands.remove(i);
+		}
+	}
+}
@@ -0,0 +1,8 @@
+package ir;
+
+
+// Transformation of a single function
+public interface Pass {
+	// Returns true if the function changed
+	boolean run(Function function);
+}
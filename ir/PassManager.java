@@ -0,0 +1,26 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+// Runs its passes in order over a function until none of them changes it
+public class PassManager {
+	static final int MAX_ROUNDS = 10;		// Bound on repetitions, each pass is correct on its own
+
+	List<Pass> passes = new ArrayList<>();
+
+	public void add(Pass pass) {
+		passes.add(pass);
+	}
+
+
+	public void run(Function function) {
+		boolean changed = true;
+		for(int round = 0; changed && round < MAX_ROUNDS; round++) {
+			changed = false;
+			for(Pass pass : passes)
+				changed |= pass.run(function);
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package ir;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+
+// Writes globals and functions as LLVM text
+// Unnamed registers are numbered %_1, %_2, ... and unlabeled blocks entry.0, LBL.1, LBL.2, ... in each function
+// Labels share the local namespace with the allocas named after variables, so they contain a '.', which
+// MiniJava identifiers cannot
+public class Printer {
+	Writer out;
+
+	public Printer(Writer out) {
+		this.out = out;
+	}
+
+
+	public void print(Global global) throws IOException {
+		out.append(global.ref() + " = " + (global.constant ? "constant " : "global ") + global.type.pointee + " " + global.initializer + "\n");
+	}
+
+
+	public void print(Function function) throws IOException {
+		String returnType = function.signature.returnType.toString();
+		if(function.blocks.isEmpty()) {		// Declaration, parameter types only
+			out.append("declare " + returnType + " " + function.ref() + "(" + String.join(", ", typeNames(function.signature)) + ")\n");
+			return;
+		}
+
+		List<String> params = new ArrayList<>();
+		for(Register param : function.parameters)
+			params.add(param.toString());
+
+		int registers = 1, labels = 1;
+		for(BasicBlock block : function.blocks) {
+			if(block.label == null)
+				block.label = (block == function.entry()) ? "entry.0" : "LBL." + labels++;
+			for(Instruction inst : block.instructions)
+				if(inst.result != null && inst.result.name == null)
+					inst.result.number = registers++;
+		}
+
+		// Written at once, so the time report charges one write per function to emit
+		StringBuilder text = new StringBuilder("\ndefine " + returnType + " " + function.ref() + "(" + String.join(", ", params) + ") {");
+		for(BasicBlock block : function.blocks) {
+			text.append("\n" + block.label + ":" + (block.comment != null ? "\t; " + block.comment : ""));
+			for(Instruction inst : block.instructions)
+				text.append("\n\t" + text(inst));
+		}
+		out.append(text.append("\n}\n"));
+	}
+
+
+	static List<String> typeNames(IRType signature) {
+		List<String> names = new ArrayList<>();
+		for(IRType param : signature.parameters)
+			names.add(param.name);
+		if(signature.varargs)
+			names.add("...");
+		return names;
+	}
+
+
+	static String text(Instruction inst) {
+		List<Value> ops = inst.operands;
+		String def = (inst.result != null) ? inst.result.ref() + " = " : "";
+		switch(inst.op) {
+			case ADD: case SUB: case MUL: case XOR: case SLT: case ULT:
+				return def + inst.op.name + " " + ops.get(0) + ", " + ops.get(1).ref();
+			case ALLOCA:
+				return def + "alloca " + inst.type;
+			case LOAD:
+				return def + "load " + inst.result.type + ", " + ops.get(0);
+			case STORE:
+				return "store " + ops.get(0) + ", " + ops.get(1);
+			case GEP: {
+				List<String> args = new ArrayList<>();
+				for(Value operand : ops)
+					args.add(operand.toString());
+				return def + "getelementptr " + ops.get(0).type.pointee + ", " + String.join(", ", args);
+			}
+			case BITCAST:
+				return def + "bitcast " + ops.get(0) + " to " + inst.result.type;
+			case CALL: {
+				IRType signature = ops.get(0).type.pointee;
+				List<String> args = new ArrayList<>();
+				for(Value operand : ops.subList(1, ops.size()))
+					args.add(operand.toString());
+				// Variadic callees need their whole type
+				String type = signature.varargs ? signature.toString() : signature.returnType.toString();
+				return def + "call " + type + " " + ops.get(0).ref() + "(" + String.join(", ", args) + ")";
+			}
+			case PHI: {
+				List<String> incoming = new ArrayList<>();
+				for(int i = 0; i < ops.size(); i++)
+					incoming.add("[" + ops.get(i).ref() + ", %" + inst.blocks.get(i).label + "]");
+				return def + "phi " + inst.result.type + " " + String.join(", ", incoming);
+			}
+			case BR:
+				return "br label %" + inst.blocks.get(0).label;
+			case CONDBR:
+				return "br " + ops.get(0) + ", label %" + inst.blocks.get(0).label + ", label %" + inst.blocks.get(1).label;
+			case RET:
+				return ops.isEmpty() ? "ret void" : "ret " + ops.get(0);
+			default:
+				return "unreachable";
+		}
+	}
+}
@@ -0,0 +1,18 @@
+package ir;
+
+
+// Virtual register defined once, by an instruction or as a function parameter
+public class Register extends Value {
+	public final String name;		// Fixed name, null to be numbered by the printer
+	int number;
+
+	public Register(IRType type, String name) {
+		super(type);
+		this.name = name;
+	}
+
+
+	public String ref() {
+		return "%" + ((name != null) ? name : "_" + number);
+	}
+}
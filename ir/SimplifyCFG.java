@@ -0,0 +1,74 @@
+package ir;
+
+import java.util.*;
+import ir.Instruction.Op;
+
+
+// Remove blocks no path from the entry reaches, phis receiving the same value from every block, and
+// jumps to a block whose only predecessor is the jumping block, which is merged into it
+public class SimplifyCFG implements Pass {
+	public boolean run(Function function) {
+		boolean changed = removeUnreachable(function);
+
+		for(BasicBlock block : function.blocks)
+			for(Instruction phi : block.phis())
+				if(phi.operands.stream().allMatch(value -> same(value, phi.operands.get(0)))) {
+					function.replaceUses(phi.result, phi.operands.get(0));
+					block.instructions.remove(phi);
+					changed = true;
+				}
+
+		Map<BasicBlock, List<BasicBlock>> preds = function.predecessors();
+
+		for(int i = 0; i < function.blocks.size(); i++) {
+			BasicBlock block = function.blocks.get(i);
+			Instruction last = block.terminator();
+			if(last == null || last.op != Op.BR)
+				continue;
+
+			BasicBlock next = last.blocks.get(0);
+			if(next == block || next == function.entry() || preds.get(next).size() != 1 || !next.phis().isEmpty())
+				continue;
+
+			block.instructions.remove(last);
+			block.instructions.addAll(next.instructions);
+			function.blocks.remove(next);
+			for(BasicBlock succ : block.successors())		// Phis now receive their value from the merged block
+				for(Instruction phi : succ.phis())
+					Collections.replaceAll(phi.blocks, next, block);
+			preds = function.predecessors();
+			i--;		// The merged block may end with another jump
+			changed = true;
+		}
+		return changed;
+	}
+
+
+	static boolean same(Value a, Value b) {
+		if(a instanceof Constant && b instanceof Constant)
+			return a.type.equals(b.type) && ((Constant) a).value == ((Constant) b).value;
+		return a == b;
+	}
+
+
+	static boolean removeUnreachable(Function function) {
+		Set<BasicBlock> reached = new HashSet<>();
+		Deque<BasicBlock> pending = new ArrayDeque<>();
+		pending.push(function.entry());
+		while(!pending.isEmpty()) {
+			BasicBlock block = pending.pop();
+			if(reached.add(block))
+				pending.addAll(block.successors());
+		}
+		if(reached.size() == function.blocks.size())
+			return false;
+
+		for(BasicBlock block : function.blocks)
+			if(!reached.contains(block))
+				for(BasicBlock succ : block.successors())
+					for(Instruction phi : succ.phis())
+						phi.removeIncoming(block);
+		function.blocks.retainAll(reached);
+		return true;
+	}
+}
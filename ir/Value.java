@@ -0,0 +1,19 @@
+package ir;
+
+
+// Operand of an instruction
+public abstract class Value {
+	public final IRType type;
+
+	Value(IRType type) {
+		this.type = type;
+	}
+
+	// Operand without its type, as written in LLVM
+	public abstract String ref();
+
+	// Operand with its type
+	public String toString() {
+		return type + " " + ref();
+	}
+}
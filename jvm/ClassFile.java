@@ -0,0 +1,148 @@
+package jvm;
+
+import java.io.*;
+import java.util.*;
+
+
+// JVM class file with its constant pool, fields and methods, serialized by toByteArray
+//
+// Classes are written with version 49, which the type inferring verifier checks, so methods need
+// no stack map frames.
+public class ClassFile {
+	static final int MAGIC = 0xCAFEBABE;
+	static final int VERSION = 49;
+	static final int MAX_CODE = 32767;		// Every branch offset of a smaller method fits in 16 bits
+
+	public static final int ACC_PUBLIC = 0x0001;
+	public static final int ACC_STATIC = 0x0008;
+	public static final int ACC_SUPER = 0x0020;
+
+	// Constant pool tags
+	static final int UTF8 = 1, INTEGER = 3, CLASS = 7, STRING = 8, FIELD = 9, METHOD = 10, NAME_AND_TYPE = 12;
+
+	public final String name;		// Internal name, packages separated by '/'
+	ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+	DataOutputStream pool = new DataOutputStream(poolBytes);
+	Map<String, Integer> constants = new HashMap<>();		// Index of each entry by tag and contents
+	int poolSize = 1;
+	int thisClass, superClass;
+	ByteArrayOutputStream fieldBytes = new ByteArrayOutputStream();
+	ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+	int fieldCount, methodCount;
+
+	public ClassFile(String name, String superName) {
+		this.name = name;
+		thisClass = classRef(name);
+		superClass = classRef(superName);
+	}
+
+	// Index of a constant, adding it to the pool the first time
+	int constant(String key, int tag, Object... operands) {
+		Integer index = constants.get(key);
+		if(index != null)
+			return index;
+
+		try {
+			pool.writeByte(tag);
+			for(Object operand : operands)
+				if(operand instanceof String)
+					pool.writeUTF((String) operand);		// Modified UTF-8 with its length, as the format expects
+				else if(tag == INTEGER)
+					pool.writeInt((Integer) operand);
+				else
+					pool.writeShort((Integer) operand);
+		}
+		catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		constants.put(key, poolSize);
+		return poolSize++;
+	}
+
+
+	int utf8(String value) {
+		return constant("Utf8 " + value, UTF8, value);
+	}
+
+
+	int integer(int value) {
+		return constant("Integer " + value, INTEGER, value);
+	}
+
+
+	int classRef(String name) {
+		return constant("Class " + name, CLASS, utf8(name));
+	}
+
+
+	int string(String value) {
+		return constant("String " + value, STRING, utf8(value));
+	}
+
+
+	int nameAndType(String name, String descriptor) {
+		return constant("NameAndType " + name + " " + descriptor, NAME_AND_TYPE, utf8(name), utf8(descriptor));
+	}
+
+
+	int fieldRef(String owner, String name, String descriptor) {
+		return constant("Field " + owner + "." + name + " " + descriptor, FIELD, classRef(owner), nameAndType(name, descriptor));
+	}
+
+
+	int methodRef(String owner, String name, String descriptor) {
+		return constant("Method " + owner + "." + name + descriptor, METHOD, classRef(owner), nameAndType(name, descriptor));
+	}
+
+
+	public void addField(int access, String name, String descriptor) throws IOException {
+		DataOutputStream out = new DataOutputStream(fieldBytes);
+		out.writeShort(access);
+		out.writeShort(utf8(name));
+		out.writeShort(utf8(descriptor));
+		out.writeShort(0);		// Attributes
+		fieldCount++;
+	}
+
+
+	public void addMethod(int access, String name, String descriptor, Code code) throws Exception {
+		if(code.length > MAX_CODE)
+			throw new Exception("Method '" + name + "' of class '" + this.name + "' is too large for the JVM");
+
+		DataOutputStream out = new DataOutputStream(methodBytes);
+		out.writeShort(access);
+		out.writeShort(utf8(name));
+		out.writeShort(utf8(descriptor));
+		out.writeShort(1);		// Attributes
+		out.writeShort(utf8("Code"));
+		out.writeInt(12 + code.length);
+		out.writeShort(code.maxStack);
+		out.writeShort(code.maxLocals);
+		out.writeInt(code.length);
+		out.write(code.bytes, 0, code.length);
+		out.writeShort(0);		// Exception table
+		out.writeShort(0);		// Attributes
+		methodCount++;
+	}
+
+
+	public byte[] toByteArray() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeShort(0);
+		out.writeShort(VERSION);
+		out.writeShort(poolSize);
+		poolBytes.writeTo(out);
+		out.writeShort(ACC_PUBLIC | ACC_SUPER);
+		out.writeShort(thisClass);
+		out.writeShort(superClass);
+		out.writeShort(0);		// Interfaces
+		out.writeShort(fieldCount);
+		fieldBytes.writeTo(out);
+		out.writeShort(methodCount);
+		methodBytes.writeTo(out);
+		out.writeShort(0);		// Attributes
+		return bytes.toByteArray();
+	}
+}
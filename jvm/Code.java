@@ -0,0 +1,215 @@
+package jvm;
+
+import java.util.*;
+
+
+// Bytecode of one method, tracking the operand stack depth and local variable slots it needs
+//
+// Every value MiniJava uses takes a single stack slot, so the depth changes by a fixed amount per
+// instruction. A label takes the depth of the jumps to it when the code before it does not fall
+// through.
+public class Code {
+	public static final int ACONST_NULL = 1, ICONST_0 = 3, BIPUSH = 16, SIPUSH = 17, LDC = 18, LDC_W = 19;
+	public static final int ILOAD = 21, ALOAD = 25, IALOAD = 46, BALOAD = 51, ISTORE = 54, ASTORE = 58, IASTORE = 79, BASTORE = 84;
+	public static final int DUP = 89, DUP2 = 92, SWAP = 95, IADD = 96, ISUB = 100, IMUL = 104, IXOR = 130;
+	public static final int IFEQ = 153, IF_ICMPGE = 162, GOTO = 167, IRETURN = 172, ARETURN = 176, RETURN = 177;
+	public static final int GETSTATIC = 178, PUTSTATIC = 179, GETFIELD = 180, PUTFIELD = 181;
+	public static final int INVOKEVIRTUAL = 182, INVOKESPECIAL = 183, INVOKESTATIC = 184;
+	public static final int NEW = 187, NEWARRAY = 188, ARRAYLENGTH = 190, WIDE = 196;
+	public static final int T_BOOLEAN = 4, T_INT = 10;		// newarray element types
+
+	// Jump target, placed once
+	public static class Label {
+		int offset = -1;
+		int stack = -1;		// Depth at the target, -1 until a jump or the label itself sets it
+		List<Integer> jumps = new ArrayList<>();		// Offsets of jump instructions to patch
+	}
+
+	ClassFile classFile;
+	byte[] bytes = new byte[256];
+	int length;
+	int stack, maxStack, maxLocals;
+	boolean reachable = true;		// False after goto and return until the next label
+
+	public Code(ClassFile classFile, int arguments) {
+		this.classFile = classFile;
+		maxLocals = arguments;
+	}
+
+
+	void put(int value) {
+		if(length == bytes.length)
+			bytes = Arrays.copyOf(bytes, 2 * length);
+		bytes[length++] = (byte) value;
+	}
+
+
+	void putShort(int value) {
+		put(value >> 8);
+		put(value);
+	}
+
+
+	void adjust(int delta) {
+		stack += delta;
+		maxStack = Math.max(maxStack, stack);
+	}
+
+	// Instruction without operands
+	public void op(int opcode) {
+		put(opcode);
+		switch(opcode) {
+			case ACONST_NULL:
+			case DUP:
+				adjust(1);
+				break;
+			case DUP2:
+				adjust(2);
+				break;
+			case IALOAD:
+			case BALOAD:
+			case IADD:
+			case ISUB:
+			case IMUL:
+			case IXOR:
+				adjust(-1);
+				break;
+			case IASTORE:
+			case BASTORE:
+				adjust(-3);
+				break;
+			case IRETURN:
+			case ARETURN:
+				adjust(-1);
+				reachable = false;
+				break;
+			case RETURN:
+				reachable = false;
+				break;
+			default:		// swap, arraylength and the constants below
+				if(opcode >= ICONST_0 - 1 && opcode <= ICONST_0 + 5)
+					adjust(1);
+		}
+	}
+
+	// Push an int constant with the shortest instruction
+	public void push(int value) {
+		if(value >= -1 && value <= 5)
+			op(ICONST_0 + value);
+		else if(value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+			put(BIPUSH);
+			put(value);
+			adjust(1);
+		}
+		else if(value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+			put(SIPUSH);
+			putShort(value);
+			adjust(1);
+		}
+		else
+			constant(classFile.integer(value));
+	}
+
+
+	public void push(String value) {
+		constant(classFile.string(value));
+	}
+
+
+	void constant(int index) {
+		if(index < 256) {
+			put(LDC);
+			put(index);
+		}
+		else {
+			put(LDC_W);
+			putShort(index);
+		}
+		adjust(1);
+	}
+
+	// Load or store a local variable slot
+	public void local(int opcode, int slot) {
+		if(slot < 256) {
+			put(opcode);
+			put(slot);
+		}
+		else {
+			put(WIDE);
+			put(opcode);
+			putShort(slot);
+		}
+		adjust((opcode == ILOAD || opcode == ALOAD) ? 1 : -1);
+		maxLocals = Math.max(maxLocals, slot + 1);
+	}
+
+
+	public void field(int opcode, String owner, String name, String descriptor) {
+		put(opcode);
+		putShort(classFile.fieldRef(owner, name, descriptor));
+		adjust((opcode == GETSTATIC) ? 1 : (opcode == PUTSTATIC) ? -1 : (opcode == PUTFIELD) ? -2 : 0);
+	}
+
+
+	public void invoke(int opcode, String owner, String name, String descriptor) {
+		put(opcode);
+		putShort(classFile.methodRef(owner, name, descriptor));
+		int args = 0;
+		for(int i = 1; descriptor.charAt(i) != ')'; i++) {
+			while(descriptor.charAt(i) == '[')
+				i++;
+			if(descriptor.charAt(i) == 'L')
+				i = descriptor.indexOf(';', i);
+			args++;
+		}
+		adjust(-args - ((opcode == INVOKESTATIC) ? 0 : 1) + (descriptor.endsWith(")V") ? 0 : 1));
+	}
+
+	// new with a class operand
+	public void type(int opcode, String className) {
+		put(opcode);
+		putShort(classFile.classRef(className));
+		adjust(1);
+	}
+
+
+	public void newArray(int elementType) {
+		put(NEWARRAY);
+		put(elementType);
+	}
+
+
+	public void jump(int opcode, Label target) {
+		adjust((opcode == GOTO) ? 0 : (opcode == IFEQ) ? -1 : -2);
+		if(target.stack < 0)
+			target.stack = stack;
+
+		if(target.offset >= 0) {		// Backward jump
+			put(opcode);
+			putShort(target.offset - length + 1);
+		}
+		else {
+			target.jumps.add(length);
+			put(opcode);
+			putShort(0);
+		}
+		if(opcode == GOTO)
+			reachable = false;
+	}
+
+
+	public void label(Label label) {
+		label.offset = length;
+		for(int jump : label.jumps) {
+			int offset = label.offset - jump;
+			bytes[jump + 1] = (byte) (offset >> 8);
+			bytes[jump + 2] = (byte) offset;
+		}
+
+		if(reachable)
+			label.stack = stack;
+		else
+			stack = Math.max(label.stack, 0);
+		reachable = true;
+	}
+}
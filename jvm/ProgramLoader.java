@@ -0,0 +1,79 @@
+package jvm;
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.util.*;
+
+
+// Class loader of one compiled program, running its main class in the compiler's JVM
+//
+// Generated classes are defined from memory the first time they are used, and resolve
+// RuntimeSupport and the Java library through the compiler's own class loader. The program runs on
+// a thread with a large stack, since the native one gets the whole process stack for recursion.
+public class ProgramLoader extends ClassLoader {
+	static final long STACK_SIZE = 1L << 30;
+
+	// Action running a MiniJava program, compiled or interpreted
+	public interface Program {
+		void run() throws Throwable;
+	}
+
+	Map<String, byte[]> classes;		// Class files by internal name
+
+	public ProgramLoader(Map<String, byte[]> classes) {
+		super(ProgramLoader.class.getClassLoader());
+		this.classes = classes;
+	}
+
+
+	protected Class<?> findClass(String name) throws ClassNotFoundException {
+		byte[] bytes = classes.get(name.replace('.', '/'));
+		if(bytes == null)
+			throw new ClassNotFoundException(name);
+		return defineClass(name, bytes, 0, bytes.length);
+	}
+
+	// Run main of the class, printing to out through its static field out
+	// Returns the exit status of the native program, 1 after an out of bounds access
+	public int run(String mainClass, PrintStream out) throws Exception {
+		PrintStream output = new PrintStream(new BufferedOutputStream(out, 1 << 16), false);
+		Class<?> c = loadClass(mainClass.replace('/', '.'));
+		c.getField("out").set(null, output);
+		Method main = c.getMethod("main", String[].class);
+
+		return execute(() -> {
+			try {
+				main.invoke(null, (Object) new String[0]);
+			}
+			catch(InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}, mainClass, output);
+	}
+
+	// Run a program printing to output on its own thread, shared with the interpreters of --run
+	// Returns the exit status of the native program, 1 after an out of bounds access
+	public static int execute(Program program, String name, PrintStream output) throws Exception {
+		Throwable[] failure = new Throwable[1];
+		Thread thread = new Thread(null, () -> {
+			try {
+				program.run();
+			}
+			catch(Throwable e) {
+				failure[0] = e;
+			}
+		}, name, STACK_SIZE);
+		thread.start();
+		thread.join();
+
+		int status = 0;
+		if(failure[0] instanceof RuntimeSupport.OutOfBounds) {
+			output.println("Out of bounds");
+			status = 1;
+		}
+		output.flush();
+		if(status == 0 && failure[0] != null)
+			throw new Exception("Program failed: " + failure[0]);
+		return status;
+	}
+}
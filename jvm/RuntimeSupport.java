@@ -0,0 +1,33 @@
+package jvm;
+
+
+// Checks called by generated classes, failing like throw_oob of the LLVM runtime
+public class RuntimeSupport {
+	// Ends the program with "Out of bounds" and exit status 1
+	public static class OutOfBounds extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		public OutOfBounds() {
+			super("Out of bounds", null, false, false);		// No stack trace
+		}
+	}
+
+	// Array length or index checked before the array is evaluated
+	public static int nonNegative(int value) {
+		if(value < 0)
+			throw new OutOfBounds();
+		return value;
+	}
+
+
+	public static void check(int[] array, int index) {
+		if(index < 0 || index >= array.length)
+			throw new OutOfBounds();
+	}
+
+
+	public static void check(boolean[] array, int index) {
+		if(index < 0 || index >= array.length)
+			throw new OutOfBounds();
+	}
+}
@@ -0,0 +1,64 @@
+class Garbage {
+	public static void main(String[] a) {
+		System.out.println(new Churn().Run(200000, 100));
+	}
+}
+
+// Allocates many times the collector's heap threshold, keeping every keep-th node in a list
+class Churn {
+	public int Run(int total, int keep) {
+		int i;
+		int k;
+		int sum;
+		int[] scratch;
+		Node list;
+		Node n;
+		boolean ok;
+		list = new Node();
+		ok = list.Init(0 - 1, list);
+		i = 0;
+		k = 0;
+		while(i < total) {
+			n = new Node();
+			scratch = new int[16];
+			scratch[15] = i;
+			k = k + 1;
+			if(k < keep)
+				ok = n.Init(scratch[15], n);		// Garbage, pointing to itself
+			else {
+				ok = n.Init(i, list);
+				list = n;
+				k = 0;
+			}
+			i = i + 1;
+		}
+		sum = 0;
+		n = list;
+		i = n.GetValue();
+		while(0 < (i + 1)) {
+			sum = sum + i;
+			n = n.GetNext();
+			i = n.GetValue();
+		}
+		return sum;
+	}
+}
+
+class Node {
+	int value;
+	Node next;
+
+	public boolean Init(int v, Node rest) {
+		value = v;
+		next = rest;
+		return true;
+	}
+
+	public int GetValue() {
+		return value;
+	}
+
+	public Node GetNext() {
+		return next;
+	}
+}
@@ -0,0 +1,176 @@
+// Runtime of -fgc, linked with the generated code: clang File.ll runtime/gc.c
+//
+// Mark-sweep collection of the objects allocated with gc_alloc, linked in a list through their headers.
+// Objects are traced precisely through their pointer maps (byte offsets of pointer fields, ended by -1),
+// the stack conservatively: any word pointing into a payload keeps its object alive. Registers are
+// spilled to the stack with setjmp before the scan, so pointers held only in callee saved registers are seen.
+
+#include <setjmp.h>
+#include <stdint.h>
+#include <stdio.h>
+#include <stdlib.h>
+
+#define GC_MIN_HEAP (1 << 20)		// Live bytes the heap may grow to before the first collection
+
+typedef struct gc_object {
+	struct gc_object *next;
+	uint64_t size;		// Payload bytes
+	int32_t *map;
+	uint64_t mark;
+} gc_object;
+
+static gc_object *objects;
+static uint64_t count;
+static uint64_t heap;
+static uint64_t threshold = GC_MIN_HEAP;
+static char *stack_bottom;
+static gc_object **marks;
+static uint64_t marks_len, marks_cap;
+static uint64_t collections, freed, freed_bytes, allocated, peak;
+
+void gc_collect(void);
+
+// Statistics on stderr
+static void gc_stats(void) {
+	fprintf(stderr, "GC: %llu collections, %llu objects freed (%llu bytes), %llu bytes allocated, %llu bytes peak heap\n",
+		(unsigned long long) collections, (unsigned long long) freed, (unsigned long long) freed_bytes,
+		(unsigned long long) allocated, (unsigned long long) peak);
+}
+
+// Remember where the stack of main starts and print statistics at exit
+void gc_init(char *bottom) {
+	stack_bottom = bottom;
+	atexit(gc_stats);
+}
+
+// Allocate zeroed payload of size bytes behind a header, collecting first when the heap would outgrow the threshold
+void *gc_alloc(uint64_t size, int32_t *map) {
+	if(heap + size > threshold)
+		gc_collect();
+
+	gc_object *object = calloc(1, sizeof(gc_object) + size);
+	if(object == NULL) {
+		fprintf(stderr, "GC: out of memory\n");
+		exit(1);
+	}
+	object->next = objects;
+	object->size = size;
+	object->map = map;
+	objects = object;
+
+	count++;
+	heap += size;
+	allocated += size;
+	if(heap > peak)
+		peak = heap;
+	return object + 1;
+}
+
+// Order headers by address for qsort
+static int gc_compare(const void *a, const void *b) {
+	uintptr_t x = (uintptr_t) *(gc_object *const *) a, y = (uintptr_t) *(gc_object *const *) b;
+	return x < y ? -1 : x > y;
+}
+
+// Mark an object and push it to be traced
+static void gc_mark(gc_object *object) {
+	if(object->mark)
+		return;
+	object->mark = 1;
+	if(marks_len == marks_cap) {
+		marks_cap = marks_cap * 2 < 1024 ? 1024 : marks_cap * 2;
+		marks = realloc(marks, marks_cap * sizeof(gc_object *));
+		if(marks == NULL) {
+			fprintf(stderr, "GC: out of memory\n");
+			exit(1);
+		}
+	}
+	marks[marks_len++] = object;
+}
+
+// Mark the object whose payload contains word, found by binary search in the sorted headers
+static void gc_mark_word(uintptr_t word, gc_object **sorted, uint64_t n) {
+	uint64_t lo = 0, hi = n;
+	while(lo < hi) {
+		uint64_t mid = (lo + hi) / 2;
+		if((uintptr_t) sorted[mid] <= word)
+			lo = mid + 1;
+		else
+			hi = mid;
+	}
+	if(lo == 0)
+		return;
+
+	gc_object *object = sorted[lo - 1];
+	uintptr_t start = (uintptr_t) (object + 1);
+	if(word >= start && word < start + object->size)
+		gc_mark(object);
+}
+
+// Mark everything reachable from the pushed objects through the pointer fields of their maps
+static void gc_trace(gc_object **sorted, uint64_t n) {
+	while(marks_len > 0) {
+		gc_object *object = marks[--marks_len];
+		if(object->map == NULL)
+			continue;
+		char *fields = (char *) (object + 1);
+		for(int32_t *offset = object->map; *offset >= 0; offset++) {
+			void *child = *(void **) (fields + *offset);
+			if(child != NULL)
+				gc_mark_word((uintptr_t) child, sorted, n);
+		}
+	}
+}
+
+// Free unmarked objects and clear the marks of the rest
+static void gc_sweep(void) {
+	gc_object **link = &objects;
+	while(*link != NULL) {
+		gc_object *object = *link;
+		if(object->mark) {
+			object->mark = 0;
+			link = &object->next;
+			continue;
+		}
+		*link = object->next;
+		count--;
+		heap -= object->size;
+		freed++;
+		freed_bytes += object->size;
+		free(object);
+	}
+}
+
+// Scan the stack conservatively from this frame, below the one of gc_collect, to the bottom of main
+static __attribute__((noinline)) void gc_scan(gc_object **sorted, uint64_t n) {
+	void *top;
+	uintptr_t align = sizeof(void *) - 1;
+	for(char *word = (char *) (((uintptr_t) &top + align) & ~align); word + sizeof(void *) <= stack_bottom; word += sizeof(void *))
+		gc_mark_word(*(uintptr_t *) word, sorted, n);
+}
+
+void __attribute__((noinline)) gc_collect(void) {
+	jmp_buf registers;		// Callee saved registers, scanned with the rest of this frame by gc_scan
+#ifdef __GNUC__
+	__builtin_unwind_init();
+#endif
+	setjmp(registers);
+
+	gc_object **sorted = malloc(count * sizeof(gc_object *) + 1);
+	if(sorted == NULL) {
+		fprintf(stderr, "GC: out of memory\n");
+		exit(1);
+	}
+	uint64_t n = 0;
+	for(gc_object *object = objects; object != NULL; object = object->next)
+		sorted[n++] = object;
+	qsort(sorted, n, sizeof(gc_object *), gc_compare);
+
+	gc_scan(sorted, n);
+	gc_trace(sorted, n);
+	free(sorted);
+	gc_sweep();
+
+	threshold = heap * 2 < GC_MIN_HEAP ? GC_MIN_HEAP : heap * 2;
+	collections++;
+}
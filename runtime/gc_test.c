@@ -0,0 +1,70 @@
+// Execution test of the -fgc runtime: make gc-test
+//
+// Allocates objects the way the generated code does, many times the heap threshold, keeping a list of
+// some of them reachable only from the stack and their next fields. Checks that collections ran, that
+// garbage was freed and that every kept object survived with its contents.
+
+#include "gc.c"
+
+static int32_t node_map[] = {0, -1};		// Pointer field at offset 0, an int at offset 8
+
+typedef struct node {
+	struct node *next;
+	int64_t value;
+} node;
+
+static int failures;
+
+static void expect(int condition, const char *message) {
+	if(!condition) {
+		fprintf(stderr, "gc_test: %s\n", message);
+		failures++;
+	}
+}
+
+// Returns the list of kept nodes, every keep-th allocated one
+static __attribute__((noinline)) node *allocate(int total, int keep) {
+	node *list = NULL;
+	for(int i = 0; i < total; i++) {
+		node *n = gc_alloc(sizeof(node), node_map);
+		expect(n->next == NULL && n->value == 0, "allocation not zeroed");
+		n->value = i;
+		if(i % keep == 0) {
+			n->next = list;
+			list = n;
+		}
+		int32_t *array = gc_alloc(64 * sizeof(int32_t), NULL);		// Int array garbage, no pointer map
+		array[63] = i;
+	}
+	return list;
+}
+
+static __attribute__((noinline)) void run(void) {
+	int total = 200000, keep = 100;
+	node *list = allocate(total, keep);
+
+	expect(collections > 0, "no collection ran past the heap threshold");
+	expect(freed > 0, "no garbage was freed");
+	expect(peak < 4 * GC_MIN_HEAP, "heap grew past the collection threshold");
+
+	for(int pass = 0; pass < 2; pass++) {		// Before and after a full collection
+		int i = (total - 1) / keep * keep, kept = 0;
+		for(node *n = list; n != NULL; n = n->next, i -= keep, kept++)
+			expect(n->value == i, "kept object lost or overwritten");
+		expect(kept == total / keep, "kept list has the wrong length");
+		if(pass == 0) {
+			gc_collect();
+			expect(count >= (uint64_t) kept, "reachable objects freed by a collection");
+			expect(count < (uint64_t) kept + 1000, "unreachable objects survived a collection");
+		}
+	}
+}
+
+int main(void) {
+	gc_init(__builtin_frame_address(0));
+	run();
+	if(failures > 0)
+		return 1;
+	printf("gc_test: %llu collections, %llu objects freed\n", (unsigned long long) collections, (unsigned long long) freed);
+	return 0;
+}
@@ -1,21 +1,30 @@
 package types;
 
+import java.io.PrintStream;
 import java.util.List;
+import java.util.Map;
 import java.util.ArrayList;
+import java.util.HashMap;
 
 
 public class ClassInfo {
 	public String name;
+	public Type type;
 	public ClassInfo parent;
-	public List<VariableInfo> variables;
+	public List<VariableInfo> variables;	// Declaration order, used for offsets
 	public List<MethodInfo> methods;
 	public int varOffset, methodOffset;
+	// Own and inherited members by name, own members shadow inherited ones
+	Map<String, VariableInfo> varIndex;
+	Map<String, MethodInfo> methodIndex;
 
 	public ClassInfo(String name) {
 		this.name = name;
 		parent = null;		// No inheritance
 		variables = new ArrayList<>();
 		methods = new ArrayList<>();
+		varIndex = new HashMap<>();
+		methodIndex = new HashMap<>();
 		varOffset = 0;		// End of last variable
 		methodOffset = 0;	// End of last method
 	}
@@ -25,41 +34,41 @@ public class ClassInfo {
 		this.parent = parent;
 		varOffset = parent.varOffset;
 		methodOffset = parent.methodOffset;
+		// Parent is fully declared before its subclasses, so its members can be flattened here
+		varIndex.putAll(parent.varIndex);
+		methodIndex.putAll(parent.methodIndex);
 	}
 
 
 	public boolean addVar(VariableInfo var) {
-		for(VariableInfo v : variables)
-			if(v.name.equals(var.name))
-				return false;
+		VariableInfo declared = varIndex.get(var.name);
+		if(declared != null && (parent == null || parent.getVar(var.name) != declared))
+			return false;		// Already declared in this class
 		// Add to variables list
 		var.offset = varOffset;
 		varOffset += var.typeOffset();
 		variables.add(var);
+		varIndex.put(var.name, var);
 		return true;
 	}
 
 
 	public VariableInfo getVar(String name) {
-		for(VariableInfo var : variables)				// Find variable locally
-			if(var.name.equals(name))
-				return var;
-		// Get variable inherited from parent Class
-		return (parent == null) ? null : parent.getVar(name);
+		return varIndex.get(name);
 	}
 
 
 	public boolean addMethod(MethodInfo method) {
-		for(MethodInfo m : methods)
-			if(m.name.equals(method.name))
-				return false;
+		MethodInfo declared = methodIndex.get(method.name);
+		if(declared != null && (parent == null || parent.getMethod(method.name) != declared))
+			return false;		// Already declared in this class
 		// Check if parent classes have this method
-		MethodInfo overridden = (parent == null) ? null : parent.getMethod(method.name);
+		MethodInfo overridden = declared;
 		if(overridden == null) {					// Method does not override inherited
 			method.offset = methodOffset;
 			methodOffset += method.typeOffset();	// pointer offset = 8
 		} 
-		else if(method.type.equals(overridden.type) && method.parameters.size() == overridden.parameters.size()) {
+		else if(method.type == overridden.type && method.parameters.size() == overridden.parameters.size()) {
 			for(int i = 0; i < method.parameters.size(); i++)
 				if(method.parameters.get(i).type != overridden.parameters.get(i).type)
 					return false;
@@ -69,30 +78,22 @@ public class ClassInfo {
 		else return false;
 		// Add to methods list
 		methods.add(method);
+		methodIndex.put(method.name, method);
 		return true;
 	}
 
 
 	public MethodInfo getMethod(String name) {
-		for(MethodInfo method : methods)
-			if(method.name.equals(name))
-				return method;
-		// Get method inherited from parent Class
-		return (parent == null) ? null : parent.getMethod(name);
-	}
-
-	
-	public boolean hasAncestor(String ancestor) {
-		return name.equals(ancestor) || (parent != null && parent.hasAncestor(ancestor));
+		return methodIndex.get(name);
 	}
 
 
-	public void printOffsets() {
+	public void printOffsets(PrintStream out) {
 		for(VariableInfo var : variables)		// Print all variables with their offsets
-			System.out.println(name + "." + var.name + " : " + var.offset);
+			out.println(name + "." + var.name + " : " + var.offset);
 	
 		for(MethodInfo method : methods)		// Print all methods with their offsets
 			if(parent == null || parent.getMethod(method.name) == null)
-				System.out.println(name + "." + method.name + " : " + method.offset);
+				out.println(name + "." + method.name + " : " + method.offset);
 	}
 }
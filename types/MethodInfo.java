@@ -1,36 +1,33 @@
 package types;
 
 import java.util.List;
+import java.util.Map;
 import java.util.ArrayList;
+import java.util.HashMap;
 
 
 public class MethodInfo extends VariableInfo {
 	public List<VariableInfo> variables, parameters;
+	Map<String, VariableInfo> varIndex, paramIndex;		// Same variables by name
 	// public int varOffset;
 
-	public MethodInfo(String type, String name) {
+	public MethodInfo(Type type, String name) {
 		super(type, name);
 		variables = new ArrayList<>();
 		parameters = new ArrayList<>();
+		varIndex = new HashMap<>();
+		paramIndex = new HashMap<>();
 		// varOffset = 0;
 	}
 
 
 	public VariableInfo getParam(String name) {
-		for(VariableInfo param : parameters)
-			if(param.name.equals(name))
-				return param;
-		// Not found
-		return null;
+		return paramIndex.get(name);
 	}
 
 
 	public VariableInfo getVar(String name) {
-		for(VariableInfo var : variables)
-			if(var.name.equals(name))
-				return var;
-		// Not found
-		return null;
+		return varIndex.get(name);
 	}
 
 	public boolean hasVar(String name) {
@@ -45,6 +42,7 @@ public class MethodInfo extends VariableInfo {
 		// var.offset = varOffset;
 		// varOffset += var.typeOffset();
 		variables.add(var);
+		varIndex.put(var.name, var);
 		return true;
 	}
 
@@ -56,6 +54,7 @@ public class MethodInfo extends VariableInfo {
 		// var.offset = varOffset;
 		// varOffset += var.typeOffset();
 		parameters.add(var);
+		paramIndex.put(var.name, var);
 		return true;
 	}
 	
@@ -1,13 +1,18 @@
 package types;
 
+import java.io.PrintStream;
 import java.util.*;
 
 
 public class SymbolTable {
 	Map<String, ClassInfo> map;
+	Map<String, Type> types;		// Interned types by name
 
 	public SymbolTable() {
 		map = new LinkedHashMap<>();
+		types = new HashMap<>();
+		for(Type t : new Type[] { Type.INT, Type.BOOLEAN, Type.INT_ARRAY, Type.BOOLEAN_ARRAY, Type.STRING_ARRAY, Type.VOID })
+			types.put(t.name, t);
 	}
 
 
@@ -26,20 +31,33 @@ public class SymbolTable {
 			return false;
 
 		map.put(newClass.name, newClass);
+		newClass.type = type(newClass.name);
+		newClass.type.classInfo = newClass;
 		return true;
 	}
 
+	// Canonical type with given name, class types may be referenced before their declaration
+	public Type type(String name) {
+		Type type = types.get(name);
+		if(type == null) {
+			type = new Type(name);
+			types.put(name, type);
+		}
+
+		return type;
+	}
+
 
 	public ClassInfo[] values() {
 		return map.values().toArray(new ClassInfo[map.size()]);
 	}
 
 
-	public void printOffsets() {
+	public void printOffsets(PrintStream out) {
 		ClassInfo[] classes = Arrays.copyOfRange(values(), 1, map.size());		// Ignore main class
 		for(ClassInfo currClass : classes)	
-			currClass.printOffsets();
+			currClass.printOffsets(out);
 	
-		System.out.println("");
+		out.println("");
 	}
 }
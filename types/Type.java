@@ -0,0 +1,58 @@
+package types;
+
+
+// Canonical type, a single instance exists per type so types are compared by identity
+public class Type {
+	public static final Type INT = new Type("int");
+	public static final Type BOOLEAN = new Type("boolean");
+	public static final Type INT_ARRAY = new Type("int[]", INT);
+	public static final Type BOOLEAN_ARRAY = new Type("boolean[]", BOOLEAN);
+	public static final Type STRING_ARRAY = new Type("String[]", new Type("String"));
+	public static final Type VOID = new Type("void");
+
+	public final String name;
+	public final Type element;		// Element type of arrays, null otherwise
+	public ClassInfo classInfo;		// Class declaration, null for primitives and undeclared classes
+
+	Type(String name) {
+		this(name, null);
+	}
+
+	Type(String name, Type element) {
+		this.name = name;
+		this.element = element;
+		classInfo = null;
+	}
+
+
+	public boolean isArray() {
+		return element != null;
+	}
+
+
+	public boolean isClass() {
+		return classInfo != null;
+	}
+
+
+	public boolean isValid() {
+		return this == INT || this == BOOLEAN || this == INT_ARRAY || this == BOOLEAN_ARRAY || isClass();
+	}
+
+	// Check if this type can be used where type t is declared
+	public boolean isSubtypeOf(Type t) {
+		if(this == t)
+			return true;
+
+		for(ClassInfo c = classInfo; c != null; c = c.parent)
+			if(c.type == t)
+				return true;
+
+		return false;
+	}
+
+
+	public String toString() {
+		return name;
+	}
+}
@@ -2,10 +2,11 @@ package types;
 
 
 public class VariableInfo {
-	public String name, type;
+	public String name;
+	public Type type;
 	public int offset;
 
-	public VariableInfo(String type, String name) {
+	public VariableInfo(Type type, String name) {
 		this.type = type;
 		this.name = name;
 		offset = 0;
@@ -15,9 +16,9 @@ public class VariableInfo {
 	public int typeOffset() {
 		if(this instanceof MethodInfo)
 			return 8;
-		else if(type.equals("int"))
+		else if(type == Type.INT)
 			return 4;
-		else if(type.equals("boolean"))
+		else if(type == Type.BOOLEAN)
 			return 1;
 		
 		return 8;
@@ -0,0 +1,36 @@
+package visitors;
+
+import java.util.Map;
+import java.util.IdentityHashMap;
+import types.*;
+import types.Type;
+import syntaxtree.Node;
+
+
+// Results of type checking per AST node, so later passes do not recompute them
+public class Annotations {
+	Map<Node, Type> types;					// Expression and PrimaryExpression types
+	Map<Node, MethodInfo> methods;			// MessageSend targets
+	Map<Node, VariableInfo> variables;		// Identifiers referring to variables
+
+	public Annotations() {
+		types = new IdentityHashMap<>();
+		methods = new IdentityHashMap<>();
+		variables = new IdentityHashMap<>();
+	}
+
+
+	public Type type(Node expr) {
+		return types.get(expr);
+	}
+
+
+	public MethodInfo method(Node messageSend) {
+		return methods.get(messageSend);
+	}
+
+
+	public VariableInfo variable(Node identifier) {
+		return variables.get(identifier);
+	}
+}
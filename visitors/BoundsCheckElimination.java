@@ -0,0 +1,506 @@
+package visitors;
+
+import java.util.*;
+import types.*;
+import types.Type;
+import syntaxtree.*;
+import visitor.GJDepthFirst;
+
+
+// Range analysis finding array accesses whose bounds checks cannot fail
+//
+// Local variables and parameters only change through assignments in their own method, so for each
+// int local the pass tracks a range and the local arrays whose length it is known to be below.
+// Facts come from constants, allocation sizes, conditions of ifs and loops (i < (a.length), or i < n
+// after n = a.length or a = new int[n]) and from accesses already checked earlier on the same path.
+// Fields are not tracked, any call may change them. Loops are iterated to a fixpoint, ranges that
+// keep growing are widened to unbounded.
+class BoundsCheckElimination extends GJDepthFirst<BoundsCheckElimination.Value, BoundsCheckElimination.State> {
+	static final int LOWER = 1, UPPER = 2;		// Checks proven unnecessary: index >= 0, index < length
+	static final long MIN = Integer.MIN_VALUE, MAX = Integer.MAX_VALUE;
+
+	// Abstract value of an int or array expression
+	static class Value {
+		long lo = MIN, hi = MAX;						// Range of an int
+		VariableInfo var;								// Local variable the value was read from
+		Set<VariableInfo> below = new HashSet<>();		// Local arrays whose length is greater than the int
+		VariableInfo lengthOf;							// Local array whose length equals the int
+		long minLength;									// Lower bound of an array's length
+		VariableInfo length;							// Local int equal to an array's length
+
+		static Value range(long lo, long hi) {
+			Value v = new Value();
+			if(lo >= MIN && hi <= MAX) {		// Otherwise the int may wrap around
+				v.lo = lo;
+				v.hi = hi;
+			}
+			return v;
+		}
+	}
+
+	// Facts holding at a point of a method, missing entries mean nothing is known
+	static class State {
+		boolean unreachable;
+		Map<VariableInfo, Long> lower = new HashMap<>(), upper = new HashMap<>();		// Ranges of int locals
+		Map<VariableInfo, Set<VariableInfo>> below = new HashMap<>();					// Int local -> arrays longer than it
+		Map<VariableInfo, VariableInfo> lengthOf = new HashMap<>();						// Int local -> array of that length
+		Map<VariableInfo, Long> minLength = new HashMap<>();							// Array local -> lower bound of length
+
+		long lo(VariableInfo var) {
+			return lower.getOrDefault(var, MIN);
+		}
+
+		long hi(VariableInfo var) {
+			return upper.getOrDefault(var, MAX);
+		}
+
+
+		State copy() {
+			State s = new State();
+			s.set(this);
+			return s;
+		}
+
+
+		void set(State other) {
+			unreachable = other.unreachable;
+			lower = new HashMap<>(other.lower);
+			upper = new HashMap<>(other.upper);
+			below = new HashMap<>();
+			for(Map.Entry<VariableInfo, Set<VariableInfo>> e : other.below.entrySet())
+				below.put(e.getKey(), new HashSet<>(e.getValue()));
+			lengthOf = new HashMap<>(other.lengthOf);
+			minLength = new HashMap<>(other.minLength);
+		}
+
+		// Facts holding after either this or other
+		State join(State other) {
+			if(unreachable)
+				return other.copy();
+			if(other.unreachable)
+				return copy();
+
+			State s = new State();
+			for(VariableInfo var : lower.keySet())
+				if(other.lower.containsKey(var))
+					s.lower.put(var, Math.min(lo(var), other.lo(var)));
+			for(VariableInfo var : upper.keySet())
+				if(other.upper.containsKey(var))
+					s.upper.put(var, Math.max(hi(var), other.hi(var)));
+			for(VariableInfo var : below.keySet())
+				if(other.below.containsKey(var)) {
+					Set<VariableInfo> arrays = new HashSet<>(below.get(var));
+					arrays.retainAll(other.below.get(var));
+					if(!arrays.isEmpty())
+						s.below.put(var, arrays);
+				}
+			for(VariableInfo var : lengthOf.keySet())
+				if(lengthOf.get(var) == other.lengthOf.get(var))
+					s.lengthOf.put(var, lengthOf.get(var));
+			for(VariableInfo var : minLength.keySet())
+				if(other.minLength.containsKey(var))
+					s.minLength.put(var, Math.min(minLength.get(var), other.minLength.get(var)));
+
+			return s;
+		}
+
+		// Next loop state after this one, dropping bounds that grew so loops terminate
+		State widen(State next) {
+			State s = next.copy();
+			if(unreachable)
+				return s;
+
+			for(VariableInfo var : next.lower.keySet())
+				if(next.lo(var) < lo(var))
+					s.lower.remove(var);
+			for(VariableInfo var : next.upper.keySet())
+				if(next.hi(var) > hi(var))
+					s.upper.remove(var);
+			for(VariableInfo var : next.minLength.keySet())
+				if(next.minLength.get(var) < minLength.getOrDefault(var, 0L))
+					s.minLength.remove(var);
+
+			return s;
+		}
+
+
+		boolean same(State other) {
+			if(unreachable || other.unreachable)
+				return unreachable == other.unreachable;
+
+			return lower.equals(other.lower) && upper.equals(other.upper) && below.equals(other.below)
+				&& lengthOf.equals(other.lengthOf) && minLength.equals(other.minLength);
+		}
+
+
+		void narrow(VariableInfo var, long lo, long hi) {
+			lo = Math.max(lo, lo(var));
+			hi = Math.min(hi, hi(var));
+			if(lo > hi)
+				unreachable = true;
+			else {
+				if(lo > MIN)
+					lower.put(var, lo);
+				if(hi < MAX)
+					upper.put(var, hi);
+			}
+		}
+
+
+		void addBelow(VariableInfo var, VariableInfo array) {
+			below.computeIfAbsent(var, k -> new HashSet<>()).add(array);
+		}
+
+
+		void assign(VariableInfo var, Value value) {
+			lower.remove(var);
+			upper.remove(var);
+			below.remove(var);
+			lengthOf.remove(var);
+			narrow(var, value.lo, value.hi);
+			if(!value.below.isEmpty())
+				below.put(var, new HashSet<>(value.below));
+			if(value.lengthOf != null)
+				lengthOf.put(var, value.lengthOf);
+		}
+
+
+		void assignArray(VariableInfo array, Value value) {
+			for(Iterator<Set<VariableInfo>> it = below.values().iterator(); it.hasNext(); ) {
+				Set<VariableInfo> arrays = it.next();
+				arrays.remove(array);
+				if(value.var != null && arrays.contains(value.var))		// Copy of another array
+					arrays.add(array);
+				if(arrays.isEmpty())
+					it.remove();
+			}
+			lengthOf.values().removeIf(a -> a == array);
+			minLength.remove(array);
+			if(value.minLength > 0)
+				minLength.put(array, value.minLength);
+			if(value.length != null)
+				lengthOf.put(value.length, array);
+		}
+	}
+
+	SymbolTable classes;
+	Annotations annotations;
+	ClassInfo currClass;
+	MethodInfo currMethod;
+	Map<Node, Integer> checks;		// Array accesses with the checks they can omit
+
+	BoundsCheckElimination(SymbolTable classes, Annotations annotations) {
+		this.classes = classes;
+		this.annotations = annotations;
+		checks = new IdentityHashMap<>();
+	}
+
+	// Checks each ArrayLookup and ArrayAssignmentStatement of the program can omit, as LOWER and UPPER bits
+	static Map<Node, Integer> analyze(Node root, SymbolTable classes, Annotations annotations) throws Exception {
+		BoundsCheckElimination analysis = new BoundsCheckElimination(classes, annotations);
+		root.accept(analysis, null);
+		return analysis.checks;
+	}
+
+
+	boolean local(VariableInfo var) {
+		return var != null && (currMethod.getVar(var.name) == var || currMethod.getParam(var.name) == var);
+	}
+
+
+	Value value(Node n, State s) throws Exception {
+		Value v = n.accept(this, s);
+		return (v == null) ? new Value() : v;
+	}
+
+
+	Value variable(VariableInfo var, State s) {
+		Value v = new Value();
+		if(!local(var))
+			return v;
+
+		v.var = var;
+		if(var.type == Type.INT) {
+			v.lo = s.lo(var);
+			v.hi = s.hi(var);
+			v.below.addAll(s.below.getOrDefault(var, Collections.emptySet()));
+			v.lengthOf = s.lengthOf.get(var);
+		}
+		else
+			v.minLength = s.minLength.getOrDefault(var, 0L);
+
+		return v;
+	}
+
+	// Record the checks an access of array at index can omit, then what passing its checks proves
+	void access(Node n, Value index, Value array, State s) {
+		int omit = 0;
+		if(index.lo >= 0)
+			omit |= LOWER;
+		if(index.hi < array.minLength || (array.var != null && index.below.contains(array.var)))
+			omit |= UPPER;
+
+		checks.put(n, s.unreachable ? 0 : omit);
+		if(index.var != null && !s.unreachable) {
+			s.narrow(index.var, 0, MAX);
+			if(array.var != null)
+				s.addBelow(index.var, array.var);
+		}
+	}
+
+
+	static Node unwrap(Node n) {
+		while(true)
+			if(n instanceof Expression)
+				n = ((Expression) n).f0.choice;
+			else if(n instanceof Clause)
+				n = ((Clause) n).f0.choice;
+			else if(n instanceof PrimaryExpression)
+				n = ((PrimaryExpression) n).f0.choice;
+			else if(n instanceof BracketExpression)
+				n = ((BracketExpression) n).f1;
+			else
+				return n;
+	}
+
+	// Value of a condition operand, without recording anything
+	Value operand(Node n, State s) {
+		n = unwrap(n);
+		if(n instanceof IntegerLiteral)
+			return literal((IntegerLiteral) n);
+		else if(n instanceof Identifier)
+			return variable(annotations.variable(n), s);
+		else if(n instanceof ArrayLength) {
+			Value array = operand(((ArrayLength) n).f0, s);
+			Value v = Value.range(array.minLength, MAX);
+			v.lengthOf = array.var;
+			return v;
+		}
+
+		return new Value();
+	}
+
+	// Add the facts implied by cond evaluating to outcome
+	void refine(Node cond, boolean outcome, State s) {
+		Node n = unwrap(cond);
+		if(n instanceof NotExpression)
+			refine(((NotExpression) n).f1, !outcome, s);
+		else if(n instanceof AndExpression && outcome) {
+			refine(((AndExpression) n).f0, true, s);
+			refine(((AndExpression) n).f2, true, s);
+		}
+		else if(n instanceof TrueLiteral || n instanceof FalseLiteral) {
+			if((n instanceof TrueLiteral) != outcome)
+				s.unreachable = true;
+		}
+		else if(n instanceof CompareExpression) {
+			Value x = operand(((CompareExpression) n).f0, s);
+			Value y = operand(((CompareExpression) n).f2, s);
+			if(outcome) {		// x < y
+				if(x.lo >= y.hi)
+					s.unreachable = true;
+				if(x.var != null) {
+					s.narrow(x.var, MIN, y.hi - 1);
+					if(y.lengthOf != null)
+						s.addBelow(x.var, y.lengthOf);
+					for(VariableInfo array : y.below)
+						s.addBelow(x.var, array);
+				}
+				if(y.var != null)
+					s.narrow(y.var, x.lo + 1, MAX);
+			}
+			else {				// x >= y
+				if(x.hi < y.lo)
+					s.unreachable = true;
+				if(x.var != null)
+					s.narrow(x.var, y.lo, MAX);
+				if(y.var != null) {
+					s.narrow(y.var, MIN, x.hi);
+					for(VariableInfo array : x.below)
+						s.addBelow(y.var, array);
+				}
+			}
+		}
+	}
+
+
+	Value literal(IntegerLiteral n) {
+		try {
+			long value = Long.parseLong(n.f0.toString());
+			return Value.range(value, value);
+		}
+		catch(NumberFormatException e) {
+			return new Value();
+		}
+	}
+
+
+	public Value visit(MainClass n, State s) throws Exception {
+		currClass = classes.get(n.f1.f0.toString());
+		currMethod = currClass.getMethod("main");
+		n.f15.accept(this, new State());
+		return null;
+	}
+
+
+	public Value visit(ClassDeclaration n, State s) throws Exception {
+		currClass = classes.get(n.f1.f0.toString());
+		n.f4.accept(this, s);
+		return null;
+	}
+
+
+	public Value visit(ClassExtendsDeclaration n, State s) throws Exception {
+		currClass = classes.get(n.f1.f0.toString());
+		n.f6.accept(this, s);
+		return null;
+	}
+
+
+	public Value visit(MethodDeclaration n, State s) throws Exception {
+		currMethod = currClass.getMethod(n.f2.f0.toString());
+		State state = new State();
+		n.f8.accept(this, state);
+		value(n.f10, state);
+		return null;
+	}
+
+
+	public Value visit(AssignmentStatement n, State s) throws Exception {
+		VariableInfo var = annotations.variable(n.f0);
+		Value value = value(n.f2, s);
+		if(local(var) && var.type == Type.INT)
+			s.assign(var, value);
+		else if(local(var) && var.type.isArray())
+			s.assignArray(var, value);
+
+		return null;
+	}
+
+
+	public Value visit(ArrayAssignmentStatement n, State s) throws Exception {
+		Value index = value(n.f2, s);
+		access(n, index, variable(annotations.variable(n.f0), s), s);
+		value(n.f5, s);
+		return null;
+	}
+
+
+	public Value visit(IfStatement n, State s) throws Exception {
+		value(n.f2, s);
+		State thenState = s.copy(), elseState = s.copy();
+		refine(n.f2, true, thenState);
+		refine(n.f2, false, elseState);
+		n.f4.accept(this, thenState);
+		n.f6.accept(this, elseState);
+		s.set(thenState.join(elseState));
+		return null;
+	}
+
+
+	public Value visit(WhileStatement n, State s) throws Exception {
+		State head = s.copy();
+		while(true) {
+			State iteration = head.copy();
+			value(n.f2, iteration);
+			State body = iteration.copy();
+			refine(n.f2, true, body);
+			n.f4.accept(this, body);
+
+			State next = head.join(body);
+			if(next.same(head)) {		// Fixpoint, the last iteration recorded the final checks
+				refine(n.f2, false, iteration);
+				s.set(iteration);
+				return null;
+			}
+			head = head.widen(next);
+		}
+	}
+
+
+	public Value visit(AndExpression n, State s) throws Exception {
+		value(n.f0, s);
+		State right = s.copy();		// Evaluated only when the left clause is true
+		refine(n.f0, true, right);
+		value(n.f2, right);
+		return null;
+	}
+
+
+	public Value visit(PlusExpression n, State s) throws Exception {
+		Value x = value(n.f0, s), y = value(n.f2, s);
+		Value v = Value.range(x.lo + y.lo, x.hi + y.hi);
+		if(v.lo != MIN || v.hi != MAX) {
+			if(y.hi <= 0)
+				v.below.addAll(x.below);
+			if(x.hi <= 0)
+				v.below.addAll(y.below);
+		}
+		return v;
+	}
+
+
+	public Value visit(MinusExpression n, State s) throws Exception {
+		Value x = value(n.f0, s), y = value(n.f2, s);
+		Value v = Value.range(x.lo - y.hi, x.hi - y.lo);
+		if(v.lo != MIN || v.hi != MAX) {
+			if(y.lo >= 0)
+				v.below.addAll(x.below);
+			if(y.lo >= 1 && x.lengthOf != null)
+				v.below.add(x.lengthOf);
+		}
+		return v;
+	}
+
+
+	public Value visit(TimesExpression n, State s) throws Exception {
+		Value x = value(n.f0, s), y = value(n.f2, s);
+		long a = x.lo * y.lo, b = x.lo * y.hi, c = x.hi * y.lo, d = x.hi * y.hi;
+		return Value.range(Math.min(Math.min(a, b), Math.min(c, d)), Math.max(Math.max(a, b), Math.max(c, d)));
+	}
+
+
+	public Value visit(ArrayLookup n, State s) throws Exception {
+		Value index = value(n.f2, s);
+		access(n, index, value(n.f0, s), s);
+		return null;
+	}
+
+
+	public Value visit(ArrayLength n, State s) throws Exception {
+		Value array = value(n.f0, s);
+		Value v = Value.range(array.minLength, MAX);
+		v.lengthOf = array.var;
+		return v;
+	}
+
+
+	public Value visit(IntegerLiteral n, State s) throws Exception {
+		return literal(n);
+	}
+
+
+	public Value visit(Identifier n, State s) throws Exception {
+		return variable(annotations.variable(n), s);
+	}
+
+
+	public Value visit(ArrayAllocationExpression n, State s) throws Exception {
+		Node alloc = n.f0.choice;
+		Node size = (alloc instanceof IntegerArrayAllocationExpression) ? ((IntegerArrayAllocationExpression) alloc).f3
+																		: ((BooleanArrayAllocationExpression) alloc).f3;
+		Value length = value(size, s);
+		Value v = new Value();
+		v.minLength = Math.max(0, length.lo);
+		if(length.var != null && !s.unreachable) {		// Allocation fails for negative lengths
+			v.length = length.var;
+			s.narrow(length.var, 0, MAX);
+		}
+		return v;
+	}
+
+
+	public Value visit(BracketExpression n, State s) throws Exception {
+		return value(n.f1, s);
+	}
+}
@@ -0,0 +1,39 @@
+package visitors;
+
+import java.util.*;
+import types.*;
+
+
+// Class hierarchy analysis of the whole program
+//
+// Every class is known at compile time, so a call is monomorphic when no subclass of the receiver's
+// static class overrides the method. Such calls need no vtable lookup and can call the single
+// implementation directly.
+class ClassHierarchy {
+	Map<ClassInfo, List<ClassInfo>> subclasses = new HashMap<>();		// Direct subclasses of each class
+	Map<MethodInfo, ClassInfo> declaredIn = new HashMap<>();			// Class declaring each method body
+
+	ClassHierarchy(SymbolTable classes) {
+		for(ClassInfo c : classes.values()) {
+			subclasses.putIfAbsent(c, new ArrayList<>());
+			if(c.parent != null)
+				subclasses.computeIfAbsent(c.parent, k -> new ArrayList<>()).add(c);
+			for(MethodInfo method : c.methods)
+				declaredIn.put(method, c);
+		}
+	}
+
+
+	// Class whose implementation of method every receiver of static class receiver runs, null if there are several
+	ClassInfo target(ClassInfo receiver, MethodInfo method) {
+		Deque<ClassInfo> pending = new ArrayDeque<>(subclasses.get(receiver));
+		while(!pending.isEmpty()) {
+			ClassInfo c = pending.pop();
+			if(c.getMethod(method.name) != method)		// Overridden below the receiver
+				return null;
+			pending.addAll(subclasses.get(c));
+		}
+
+		return declaredIn.get(method);
+	}
+}
@@ -0,0 +1,539 @@
+package visitors;
+
+import java.io.*;
+import java.util.*;
+import jvm.ProgramLoader;
+import jvm.RuntimeSupport.OutOfBounds;
+import types.*;
+import types.Type;
+import syntaxtree.*;
+import visitor.GJDepthFirst;
+
+
+// Interpreter compiling the checked syntax tree to closures before running it
+//
+// Every statement and expression becomes a lambda with its names resolved once: parameters and
+// locals to slots of the frame, fields to slots of the object numbered in offset order, and calls
+// to the vtable index of the method's offset. int and boolean values are never boxed, they have
+// closure types of their own and are kept in int slots, booleans as 0 or 1. Output and array checks
+// behave exactly like Interpreter's, which stays as the reference walking the tree.
+public class ClosureCompiler extends GJDepthFirst<Object, Scope> {
+	interface IntExpr {
+		int eval(Frame f);
+	}
+
+	interface BoolExpr {
+		boolean eval(Frame f);
+	}
+
+	interface RefExpr {
+		Object eval(Frame f);
+	}
+
+	interface Stmt {
+		void exec(Frame f);
+	}
+
+	// Passes an argument from the caller's frame to a parameter slot of the callee's
+	interface Arg {
+		void pass(Frame caller, Frame callee);
+	}
+
+	// Literal, folded into the closures of the operators using it
+	static class IntConstant implements IntExpr {
+		final int value;
+
+		IntConstant(int value) {
+			this.value = value;
+		}
+
+		public int eval(Frame f) {
+			return value;
+		}
+	}
+
+	// Compiled method, result is an IntExpr, BoolExpr or RefExpr by return type
+	static class Method {
+		int ints, refs;		// Frame slots
+		Stmt body;
+		Object result;
+	}
+
+	// Object size and vtable of a class
+	static class Shape {
+		int ints, refs;
+		Method[] vtable;
+	}
+
+	static final class Instance {
+		final Method[] vtable;
+		final int[] ints;
+		final Object[] refs;
+
+		Instance(Shape shape) {
+			vtable = shape.vtable;
+			ints = new int[shape.ints];
+			refs = new Object[shape.refs];
+		}
+	}
+
+	static final class Frame {
+		final Method method;
+		final Instance self;
+		final int[] ints;
+		final Object[] refs;
+
+		Frame(Method method, Instance self) {
+			this.method = method;
+			this.self = self;
+			ints = new int[method.ints];
+			refs = new Object[method.refs];
+		}
+	}
+
+	public SymbolTable classes;
+
+	Annotations annotations;			// Expression types and resolved names from type checking
+	Map<ClassInfo, Shape> shapes = new HashMap<>();
+	Map<VariableInfo, Integer> fieldSlots = new HashMap<>();
+	Map<ClassInfo, Map<String, Method>> methods = new HashMap<>();		// Own methods of each class
+	Map<VariableInfo, Integer> slots;	// Frame slot of each parameter and local variable of the method being compiled
+	Method main;
+	PrintStream out;
+
+	public ClosureCompiler(SymbolTable classes, Annotations annotations) {
+		this.classes = classes;
+		this.annotations = annotations;
+	}
+
+	// Compile and run the program, printing to out
+	// Returns the exit status of the native program, 1 after an out of bounds access
+	public int run(Goal goal, PrintStream out) throws Exception {
+		this.out = new PrintStream(new BufferedOutputStream(out, 1 << 16), false);
+		goal.accept(this, null);
+		return ProgramLoader.execute(() -> main.body.exec(new Frame(main, null)), "interpreter", this.out);
+	}
+
+	// Int slots hold int and boolean values, ref slots arrays and objects
+	static boolean isInt(Type type) {
+		return type == Type.INT || type == Type.BOOLEAN;
+	}
+
+	// Fields numbered after the inherited ones in declaration order, which is offset order
+	Shape shape(ClassInfo c) {
+		Shape shape = shapes.get(c);
+		if(shape != null)
+			return shape;
+
+		shape = new Shape();
+		if(c.parent != null) {
+			shape.ints = shape(c.parent).ints;
+			shape.refs = shape(c.parent).refs;
+		}
+		for(VariableInfo var : c.variables)
+			fieldSlots.put(var, isInt(var.type) ? shape.ints++ : shape.refs++);
+		shapes.put(c, shape);
+		return shape;
+	}
+
+	// Fill the vtable of every class, overriding methods take the slot of the method they override
+	void createVtables() {
+		for(ClassInfo currClass : methods.keySet()) {
+			Method[] vtable = new Method[currClass.methodOffset / 8];
+			for(ClassInfo c = currClass; c != null && methods.containsKey(c); c = c.parent)
+				for(MethodInfo method : c.methods)
+					if(vtable[method.offset / 8] == null)
+						vtable[method.offset / 8] = methods.get(c).get(method.name);
+			shape(currClass).vtable = vtable;
+		}
+	}
+
+	// Slots of parameters in order then local variables, the same for a method and its overrides
+	Method startMethod(MethodInfo info) {
+		Method method = new Method();
+		slots = new HashMap<>();
+		for(VariableInfo param : info.parameters)
+			slots.put(param, isInt(param.type) ? method.ints++ : method.refs++);
+		for(VariableInfo var : info.variables)
+			slots.put(var, isInt(var.type) ? method.ints++ : method.refs++);
+		return method;
+	}
+
+
+	Stmt statements(NodeListOptional list, Scope scope) throws Exception {
+		Stmt[] stmts = new Stmt[list.size()];
+		for(int i = 0; i < stmts.length; i++)
+			stmts[i] = (Stmt) list.elementAt(i).accept(this, scope);
+
+		if(stmts.length == 1)
+			return stmts[0];
+		return f -> {
+			for(Stmt stmt : stmts)
+				stmt.exec(f);
+		};
+	}
+
+	// Closure reading a variable from its frame or field slot
+	Object load(VariableInfo var) {
+		Integer slot = slots.get(var);
+		if(slot != null) {
+			int i = slot;
+			if(var.type == Type.INT)
+				return (IntExpr) f -> f.ints[i];
+			else if(var.type == Type.BOOLEAN)
+				return (BoolExpr) f -> f.ints[i] != 0;
+			return (RefExpr) f -> f.refs[i];
+		}
+
+		int i = fieldSlots.get(var);
+		if(var.type == Type.INT)
+			return (IntExpr) f -> f.self.ints[i];
+		else if(var.type == Type.BOOLEAN)
+			return (BoolExpr) f -> f.self.ints[i] != 0;
+		return (RefExpr) f -> f.self.refs[i];
+	}
+
+	// Run the body of the method in the receiver's vtable slot, returning its frame to evaluate the result in
+	static Frame call(Frame f, RefExpr receiver, int index, Arg[] args) {
+		Instance self = (Instance) receiver.eval(f);
+		Frame callee = new Frame(self.vtable[index], self);
+		for(Arg arg : args)
+			arg.pass(f, callee);
+		callee.method.body.exec(callee);
+		return callee;
+	}
+
+
+	static int nonNegative(int value) {
+		if(value < 0)
+			throw new OutOfBounds();
+		return value;
+	}
+
+
+	static void checkIndex(int index, int length) {
+		if(index >= length)
+			throw new OutOfBounds();
+	}
+
+	// Visit
+	public Object visit(Goal n, Scope scope) throws Exception {
+		for(ClassInfo c : classes.values())
+			shape(c);
+		n.f0.accept(this, scope);		// Main Class
+		n.f1.accept(this, scope);		// Class Declarations
+		createVtables();
+		return null;
+	}
+
+
+	public Object visit(MainClass n, Scope scope) throws Exception {
+		ClassInfo currClass = classes.get(n.f1.f0.toString());
+		MethodInfo currMethod = currClass.getMethod("main");
+
+		main = startMethod(currMethod);
+		main.body = statements(n.f15, new Scope(currClass, currMethod));		// Statements
+		return null;
+	}
+
+
+	public Object visit(ClassDeclaration n, Scope scope) throws Exception {
+		Scope classScope = new Scope(classes.get(n.f1.f0.toString()));
+		methods.put(classScope.currClass, new HashMap<>());
+		n.f4.accept(this, classScope);		// Method Declarations
+		return null;
+	}
+
+
+	public Object visit(ClassExtendsDeclaration n, Scope scope) throws Exception {
+		Scope classScope = new Scope(classes.get(n.f1.f0.toString()));
+		methods.put(classScope.currClass, new HashMap<>());
+		n.f6.accept(this, classScope);		// Method Declarations
+		return null;
+	}
+
+
+	public Object visit(MethodDeclaration n, Scope scope) throws Exception {
+		MethodInfo currMethod = scope.getMethod(n.f2.f0.toString());
+		Scope methodScope = new Scope(scope.currClass, currMethod);
+
+		Method method = startMethod(currMethod);
+		methods.get(scope.currClass).put(currMethod.name, method);
+		method.body = statements(n.f8, methodScope);		// Statements
+		method.result = n.f10.accept(this, methodScope);	// Return Expression
+		return null;
+	}
+
+
+	public Object visit(Block n, Scope scope) throws Exception {
+		return statements(n.f1, scope);
+	}
+
+
+	public Object visit(AssignmentStatement n, Scope scope) throws Exception {
+		VariableInfo var = annotations.variable(n.f0);
+		Object value = n.f2.accept(this, scope);
+		Integer slot = slots.get(var);
+		if(slot != null) {
+			int i = slot;
+			if(value instanceof IntExpr) {
+				IntExpr e = (IntExpr) value;
+				return (Stmt) f -> f.ints[i] = e.eval(f);
+			}
+			else if(value instanceof BoolExpr) {
+				BoolExpr e = (BoolExpr) value;
+				return (Stmt) f -> f.ints[i] = e.eval(f) ? 1 : 0;
+			}
+			RefExpr e = (RefExpr) value;
+			return (Stmt) f -> f.refs[i] = e.eval(f);
+		}
+
+		int i = fieldSlots.get(var);
+		if(value instanceof IntExpr) {
+			IntExpr e = (IntExpr) value;
+			return (Stmt) f -> f.self.ints[i] = e.eval(f);
+		}
+		else if(value instanceof BoolExpr) {
+			BoolExpr e = (BoolExpr) value;
+			return (Stmt) f -> f.self.ints[i] = e.eval(f) ? 1 : 0;
+		}
+		RefExpr e = (RefExpr) value;
+		return (Stmt) f -> f.self.refs[i] = e.eval(f);
+	}
+
+	// The array is loaded after the index and checked before the value is evaluated
+	public Object visit(ArrayAssignmentStatement n, Scope scope) throws Exception {
+		VariableInfo var = annotations.variable(n.f0);
+		IntExpr index = (IntExpr) n.f2.accept(this, scope);
+		RefExpr array = (RefExpr) load(var);
+		Object value = n.f5.accept(this, scope);
+
+		if(var.type == Type.BOOLEAN_ARRAY) {
+			BoolExpr e = (BoolExpr) value;
+			return (Stmt) f -> {
+				int i = nonNegative(index.eval(f));
+				boolean[] a = (boolean[]) array.eval(f);
+				checkIndex(i, a.length);
+				a[i] = e.eval(f);
+			};
+		}
+		IntExpr e = (IntExpr) value;
+		return (Stmt) f -> {
+			int i = nonNegative(index.eval(f));
+			int[] a = (int[]) array.eval(f);
+			checkIndex(i, a.length);
+			a[i] = e.eval(f);
+		};
+	}
+
+
+	public Object visit(IfStatement n, Scope scope) throws Exception {
+		BoolExpr cond = (BoolExpr) n.f2.accept(this, scope);
+		Stmt thenStmt = (Stmt) n.f4.accept(this, scope);
+		Stmt elseStmt = (Stmt) n.f6.accept(this, scope);
+		return (Stmt) f -> {
+			if(cond.eval(f))
+				thenStmt.exec(f);
+			else
+				elseStmt.exec(f);
+		};
+	}
+
+
+	public Object visit(WhileStatement n, Scope scope) throws Exception {
+		BoolExpr cond = (BoolExpr) n.f2.accept(this, scope);
+		Stmt body = (Stmt) n.f4.accept(this, scope);
+		return (Stmt) f -> {
+			while(cond.eval(f))
+				body.exec(f);
+		};
+	}
+
+
+	public Object visit(PrintStatement n, Scope scope) throws Exception {
+		IntExpr e = (IntExpr) n.f2.accept(this, scope);
+		PrintStream out = this.out;
+		return (Stmt) f -> out.println(e.eval(f));
+	}
+
+	// Right clause is evaluated only when the left one is true
+	public Object visit(AndExpression n, Scope scope) throws Exception {
+		BoolExpr left = (BoolExpr) n.f0.accept(this, scope);
+		BoolExpr right = (BoolExpr) n.f2.accept(this, scope);
+		return (BoolExpr) f -> left.eval(f) && right.eval(f);
+	}
+
+
+	public Object visit(CompareExpression n, Scope scope) throws Exception {
+		IntExpr left = (IntExpr) n.f0.accept(this, scope);
+		IntExpr right = (IntExpr) n.f2.accept(this, scope);
+		if(right instanceof IntConstant) {
+			int c = ((IntConstant) right).value;
+			return (BoolExpr) f -> left.eval(f) < c;
+		}
+		return (BoolExpr) f -> left.eval(f) < right.eval(f);
+	}
+
+
+	public Object visit(PlusExpression n, Scope scope) throws Exception {
+		IntExpr left = (IntExpr) n.f0.accept(this, scope);
+		IntExpr right = (IntExpr) n.f2.accept(this, scope);
+		if(right instanceof IntConstant) {
+			int c = ((IntConstant) right).value;
+			return (IntExpr) f -> left.eval(f) + c;
+		}
+		return (IntExpr) f -> left.eval(f) + right.eval(f);
+	}
+
+
+	public Object visit(MinusExpression n, Scope scope) throws Exception {
+		IntExpr left = (IntExpr) n.f0.accept(this, scope);
+		IntExpr right = (IntExpr) n.f2.accept(this, scope);
+		if(right instanceof IntConstant) {
+			int c = ((IntConstant) right).value;
+			return (IntExpr) f -> left.eval(f) - c;
+		}
+		return (IntExpr) f -> left.eval(f) - right.eval(f);
+	}
+
+
+	public Object visit(TimesExpression n, Scope scope) throws Exception {
+		IntExpr left = (IntExpr) n.f0.accept(this, scope);
+		IntExpr right = (IntExpr) n.f2.accept(this, scope);
+		if(right instanceof IntConstant) {
+			int c = ((IntConstant) right).value;
+			return (IntExpr) f -> left.eval(f) * c;
+		}
+		return (IntExpr) f -> left.eval(f) * right.eval(f);
+	}
+
+	// The index is checked to be non negative before the array is evaluated
+	public Object visit(ArrayLookup n, Scope scope) throws Exception {
+		RefExpr array = (RefExpr) n.f0.accept(this, scope);
+		IntExpr index = (IntExpr) n.f2.accept(this, scope);
+		if(annotations.type(n.f0) == Type.BOOLEAN_ARRAY)
+			return (BoolExpr) f -> {
+				int i = nonNegative(index.eval(f));
+				boolean[] a = (boolean[]) array.eval(f);
+				checkIndex(i, a.length);
+				return a[i];
+			};
+		return (IntExpr) f -> {
+			int i = nonNegative(index.eval(f));
+			int[] a = (int[]) array.eval(f);
+			checkIndex(i, a.length);
+			return a[i];
+		};
+	}
+
+
+	public Object visit(ArrayLength n, Scope scope) throws Exception {
+		RefExpr array = (RefExpr) n.f0.accept(this, scope);
+		if(annotations.type(n.f0) == Type.BOOLEAN_ARRAY)
+			return (IntExpr) f -> ((boolean[]) array.eval(f)).length;
+		return (IntExpr) f -> ((int[]) array.eval(f)).length;
+	}
+
+	// Call the method in the receiver's vtable slot, with a frame holding the arguments
+	public Object visit(MessageSend n, Scope scope) throws Exception {
+		MethodInfo method = annotations.method(n);
+		int index = method.offset / 8;
+		RefExpr receiver = (RefExpr) n.f0.accept(this, scope);
+
+		List<Node> exprs = new ArrayList<>();
+		if(n.f4.present()) {
+			ExpressionList exprList = (ExpressionList) n.f4.node;
+			exprs.add(exprList.f0);
+			for(Node term : exprList.f1.f0.nodes)
+				exprs.add(((ExpressionTerm) term).f1);
+		}
+		Arg[] args = new Arg[exprs.size()];
+		int ints = 0, refs = 0;
+		for(int i = 0; i < args.length; i++) {
+			Object value = exprs.get(i).accept(this, scope);
+			Type type = method.parameters.get(i).type;
+			int slot = isInt(type) ? ints++ : refs++;
+			if(value instanceof IntExpr) {
+				IntExpr e = (IntExpr) value;
+				args[i] = (caller, callee) -> callee.ints[slot] = e.eval(caller);
+			}
+			else if(value instanceof BoolExpr) {
+				BoolExpr e = (BoolExpr) value;
+				args[i] = (caller, callee) -> callee.ints[slot] = e.eval(caller) ? 1 : 0;
+			}
+			else {
+				RefExpr e = (RefExpr) value;
+				args[i] = (caller, callee) -> callee.refs[slot] = e.eval(caller);
+			}
+		}
+
+		if(method.type == Type.INT)
+			return (IntExpr) f -> {
+				Frame callee = call(f, receiver, index, args);
+				return ((IntExpr) callee.method.result).eval(callee);
+			};
+		else if(method.type == Type.BOOLEAN)
+			return (BoolExpr) f -> {
+				Frame callee = call(f, receiver, index, args);
+				return ((BoolExpr) callee.method.result).eval(callee);
+			};
+		return (RefExpr) f -> {
+			Frame callee = call(f, receiver, index, args);
+			return ((RefExpr) callee.method.result).eval(callee);
+		};
+	}
+
+
+	public Object visit(IntegerLiteral n, Scope scope) throws Exception {
+		return new IntConstant((int) Long.parseLong(n.f0.toString()));		// Wraps around like i32 arithmetic
+	}
+
+
+	public Object visit(TrueLiteral n, Scope scope) throws Exception {
+		return (BoolExpr) f -> true;
+	}
+
+
+	public Object visit(FalseLiteral n, Scope scope) throws Exception {
+		return (BoolExpr) f -> false;
+	}
+
+
+	public Object visit(Identifier n, Scope scope) throws Exception {
+		return load(annotations.variable(n));
+	}
+
+
+	public Object visit(ThisExpression n, Scope scope) throws Exception {
+		return (RefExpr) f -> f.self;
+	}
+
+
+	public Object visit(IntegerArrayAllocationExpression n, Scope scope) throws Exception {
+		IntExpr length = (IntExpr) n.f3.accept(this, scope);
+		return (RefExpr) f -> new int[nonNegative(length.eval(f))];
+	}
+
+
+	public Object visit(BooleanArrayAllocationExpression n, Scope scope) throws Exception {
+		IntExpr length = (IntExpr) n.f3.accept(this, scope);
+		return (RefExpr) f -> new boolean[nonNegative(length.eval(f))];
+	}
+
+
+	public Object visit(AllocationExpression n, Scope scope) throws Exception {
+		Shape shape = shape(classes.get(n.f1.f0.toString()));
+		return (RefExpr) f -> new Instance(shape);
+	}
+
+
+	public Object visit(NotExpression n, Scope scope) throws Exception {
+		BoolExpr e = (BoolExpr) n.f1.accept(this, scope);
+		return (BoolExpr) f -> !e.eval(f);
+	}
+
+
+	public Object visit(BracketExpression n, Scope scope) throws Exception {
+		return n.f1.accept(this, scope);
+	}
+}
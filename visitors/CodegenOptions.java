@@ -0,0 +1,152 @@
+package visitors;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+// Optional code generation passes, all off by default so generated code matches the plain translation
+public class CodegenOptions {
+	static final int DEFAULT_INLINE_BUDGET = 30;
+
+	public boolean boundsCheckElimination;		// Omit array bounds checks proven unnecessary by range analysis
+	public boolean ssa;							// Keep locals in registers with phis instead of stack slots
+	public boolean constantFolding;				// Evaluate constant expressions and prune constant branches
+	public boolean devirtualize;				// Call methods no subclass overrides directly instead of through the vtable
+	public boolean packFields;					// Reorder fields for natural alignment and access them through struct types
+	public boolean escapeAnalysis;				// Allocate objects that never leave their method in its stack frame
+	public boolean arena;						// Allocate objects and arrays by bumping a pointer into mmap chunks, Linux only so not enabled by -O
+	public boolean bufferedOutput;				// Format printed integers into a buffer written at once
+	public boolean packBooleans;				// Store boolean arrays as bits in 64 bit words, not enabled by -O
+	public boolean ir;							// Generate code through the typed IR and its passes instead of directly, not enabled by -O
+	public boolean gc;							// Free unreachable objects and arrays with a mark-sweep collector, not enabled by -O
+	public boolean jvm;							// Generate JVM class files and run them in-process instead of generating LLVM, not enabled by -O
+	public boolean interpret;					// Run checked programs with an interpreter instead of generating code, set by --run
+	public boolean walkTree;					// Interpret by walking the syntax tree instead of compiling it to closures, set by --run=tree
+	public int inlineBudget;					// Largest method in tokens inlined at monomorphic calls, 0 disables inlining
+
+	// Apply a command line flag, returns false if it is not a code generation option
+	// -O enables every optimization, -f[no-]name enables or disables one
+	public boolean parse(String arg) {
+		switch(arg) {
+			case "-O":
+				boundsCheckElimination = true;
+				ssa = true;
+				constantFolding = true;
+				devirtualize = true;
+				packFields = true;
+				escapeAnalysis = true;
+				bufferedOutput = true;
+				if(inlineBudget == 0)
+					inlineBudget = DEFAULT_INLINE_BUDGET;
+				return true;
+			case "-fbounds-check-elim":
+			case "-fno-bounds-check-elim":
+				boundsCheckElimination = !arg.startsWith("-fno-");
+				return true;
+			case "-fssa":
+			case "-fno-ssa":
+				ssa = !arg.startsWith("-fno-");
+				return true;
+			case "-ffold-constants":
+			case "-fno-fold-constants":
+				constantFolding = !arg.startsWith("-fno-");
+				return true;
+			case "-fdevirtualize":
+			case "-fno-devirtualize":
+				devirtualize = !arg.startsWith("-fno-");
+				return true;
+			case "-fpack-fields":
+			case "-fno-pack-fields":
+				packFields = !arg.startsWith("-fno-");
+				return true;
+			case "-fescape-analysis":
+			case "-fno-escape-analysis":
+				escapeAnalysis = !arg.startsWith("-fno-");
+				return true;
+			case "-farena":
+			case "-fno-arena":
+				arena = !arg.startsWith("-fno-");
+				return true;
+			case "-fbuffered-output":
+			case "-fno-buffered-output":
+				bufferedOutput = !arg.startsWith("-fno-");
+				return true;
+			case "-fpack-booleans":
+			case "-fno-pack-booleans":
+				packBooleans = !arg.startsWith("-fno-");
+				return true;
+			case "-fir":
+			case "-fno-ir":
+				ir = !arg.startsWith("-fno-");
+				return true;
+			case "-fgc":
+			case "-fno-gc":
+				gc = !arg.startsWith("-fno-");
+				return true;
+			case "-fjvm":
+			case "-fno-jvm":
+				jvm = !arg.startsWith("-fno-");
+				return true;
+			case "-finline":
+				inlineBudget = DEFAULT_INLINE_BUDGET;
+				return true;
+			case "-fno-inline":
+				inlineBudget = 0;
+				return true;
+			default:
+				if(!arg.startsWith("-finline-limit="))
+					return false;
+
+				inlineBudget = Integer.parseInt(arg.substring("-finline-limit=".length()));
+				return true;
+		}
+	}
+
+	// Error message when options the IR code generator does not implement are enabled with -fir, otherwise null
+	// Only constant folding applies to the IR path, the rest would be ignored silently
+	public String unsupported() {
+		if(!ir || jvm || interpret)
+			return null;
+
+		List<String> ignored = new ArrayList<>();
+		for(String option : toString().split(","))
+			if(!option.equals("ir") && !option.equals("fold-constants"))
+				ignored.add("-f" + option);
+		if(ignored.isEmpty())
+			return null;
+		return "-fir supports only -ffold-constants, not " + String.join(", ", ignored);
+	}
+
+	// Enabled options, identifies generated code in cache keys
+	public String toString() {
+		List<String> enabled = new ArrayList<>();
+		if(boundsCheckElimination)
+			enabled.add("bounds-check-elim");
+		if(ssa)
+			enabled.add("ssa");
+		if(constantFolding)
+			enabled.add("fold-constants");
+		if(devirtualize)
+			enabled.add("devirtualize");
+		if(packFields)
+			enabled.add("pack-fields");
+		if(escapeAnalysis)
+			enabled.add("escape-analysis");
+		if(arena)
+			enabled.add("arena");
+		if(bufferedOutput)
+			enabled.add("buffered-output");
+		if(packBooleans)
+			enabled.add("pack-booleans");
+		if(ir)
+			enabled.add("ir");
+		if(gc)
+			enabled.add("gc");
+		if(jvm)
+			enabled.add("jvm");
+		if(inlineBudget > 0)
+			enabled.add("inline-limit=" + inlineBudget);
+
+		return String.join(",", enabled);
+	}
+}
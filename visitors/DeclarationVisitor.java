@@ -1,6 +1,7 @@
 package visitors;
 
 import types.*;
+import types.Type;
 import syntaxtree.*;
 import visitor.GJDepthFirst;
 
@@ -16,18 +17,22 @@ public class DeclarationVisitor extends GJDepthFirst<String, Scope> {
 	}
 
 	void SemanticException(String message) throws Exception {
+		throw semanticError(line, column, message);
+	}
+
+	static Exception semanticError(int line, int column, String message) {
 		String RED = "\u001B[1;31m";	// Text red bold
 		String RESET = "\u001B[0m";		// Text reset
-		throw new Exception(RED + "Semantic Error" + RESET + " [" + line + ":" + column + "]\n" + message);
+		return new Exception(RED + "Semantic Error" + RESET + " [" + line + ":" + column + "]\n" + message);
 	}
 
 	//Visit
 	public String visit(MainClass n, Scope scope) throws Exception {
 		ClassInfo currClass = new ClassInfo(n.f1.accept(this, scope));
-		MethodInfo currMethod = new MethodInfo("void", "main");
+		MethodInfo currMethod = new MethodInfo(Type.VOID, "main");
 
 		classes.add(currClass);
-		currMethod.addParam(new VariableInfo("String[]", n.f11.accept(this, scope)));
+		currMethod.addParam(new VariableInfo(Type.STRING_ARRAY, n.f11.accept(this, scope)));
 		currClass.addMethod(currMethod);
 		currClass.methodOffset = 0;
 
@@ -66,7 +71,7 @@ public class DeclarationVisitor extends GJDepthFirst<String, Scope> {
 
 
 	public String visit(VarDeclaration n, Scope scope) throws Exception {
-		VariableInfo var = new VariableInfo(n.f0.accept(this, scope), n.f1.accept(this, scope));
+		VariableInfo var = new VariableInfo(classes.type(n.f0.accept(this, scope)), n.f1.accept(this, scope));
 		if(!scope.add(var))
 			SemanticException("Variable '" + var.name + "' already declared in this scope");
 
@@ -75,7 +80,7 @@ public class DeclarationVisitor extends GJDepthFirst<String, Scope> {
 
 
 	public String visit(MethodDeclaration n,  Scope scope) throws Exception {
-		MethodInfo currMethod = new MethodInfo(n.f1.accept(this, scope), n.f2.accept(this, scope));
+		MethodInfo currMethod = new MethodInfo(classes.type(n.f1.accept(this, scope)), n.f2.accept(this, scope));
 
 		Scope methodScope = new Scope(scope.currClass, currMethod);
 		n.f4.accept(this, methodScope);		// Parameters
@@ -90,7 +95,7 @@ public class DeclarationVisitor extends GJDepthFirst<String, Scope> {
 
 
 	public String visit(FormalParameter n, Scope scope) throws Exception {
-		VariableInfo var = new VariableInfo(n.f0.accept(this, scope), n.f1.accept(this, scope));
+		VariableInfo var = new VariableInfo(classes.type(n.f0.accept(this, scope)), n.f1.accept(this, scope));
 		if(!scope.currMethod.addParam(var))
 			SemanticException("Parameter '" + var.name + "' already declared in this scope");
 
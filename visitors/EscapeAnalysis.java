@@ -0,0 +1,155 @@
+package visitors;
+
+import java.util.*;
+import types.*;
+import types.Type;
+import syntaxtree.*;
+import visitor.DepthFirstVisitor;
+
+
+// Allocations whose object never outlives the method creating it
+//
+// An object stays in its method when it is assigned to a local variable that is only used as the
+// receiver of calls, and no method those calls may run lets this escape by returning, assigning or
+// passing it. Calls on this inside such methods are followed, methods are assumed not to leak until
+// shown otherwise so recursive ones still qualify. An allocation site gets a single slot in the
+// stack frame, reused when it runs again in a loop: the previous object was only referenced by
+// the local being overwritten.
+class EscapeAnalysis extends DepthFirstVisitor {
+	// Uses of this and of the local objects in a method or the main class
+	static class Body {
+		boolean thisEscapes;
+		Set<VariableInfo> escaping = new HashSet<>();
+		Map<VariableInfo, List<MessageSend>> calls = new HashMap<>();		// Calls on each local, on this under null
+		Map<VariableInfo, List<AllocationExpression>> sites = new LinkedHashMap<>();		// In order of the first allocation assigned to each local
+	}
+
+	SymbolTable classes;
+	Annotations annotations;
+	Map<Node, Body> bodies = new IdentityHashMap<>();
+	Map<MethodInfo, Body> methods = new HashMap<>();
+	Set<MethodInfo> leaking = new HashSet<>();		// Methods letting this escape
+	ClassInfo currClass;
+	MethodInfo currMethod;
+	Body body;
+
+	EscapeAnalysis(SymbolTable classes, Annotations annotations) {
+		this.classes = classes;
+		this.annotations = annotations;
+	}
+
+	// Allocation sites of each method declaration and main class that can use a stack slot
+	static Map<Node, List<AllocationExpression>> analyze(Goal goal, SymbolTable classes, Annotations annotations) throws Exception {
+		EscapeAnalysis analysis = new EscapeAnalysis(classes, annotations);
+		goal.accept(analysis);
+
+		for(Map.Entry<MethodInfo, Body> e : analysis.methods.entrySet())
+			if(e.getValue().thisEscapes)
+				analysis.leaking.add(e.getKey());
+		boolean changed = true;
+		while(changed) {
+			changed = false;
+			for(Map.Entry<MethodInfo, Body> e : analysis.methods.entrySet())
+				if(!analysis.leaking.contains(e.getKey()) && analysis.anyLeaks(e.getValue().calls.get(null))) {
+					analysis.leaking.add(e.getKey());
+					changed = true;
+				}
+		}
+
+		Map<Node, List<AllocationExpression>> stack = new IdentityHashMap<>();
+		for(Map.Entry<Node, Body> e : analysis.bodies.entrySet()) {
+			List<AllocationExpression> sites = new ArrayList<>();
+			for(Map.Entry<VariableInfo, List<AllocationExpression>> site : e.getValue().sites.entrySet())
+				if(!e.getValue().escaping.contains(site.getKey()) && !analysis.anyLeaks(e.getValue().calls.get(site.getKey())))
+					sites.addAll(site.getValue());
+			if(!sites.isEmpty())
+				stack.put(e.getKey(), sites);
+		}
+		return stack;
+	}
+
+	// Check if any of the calls may run a method letting its receiver escape
+	boolean anyLeaks(List<MessageSend> calls) {
+		if(calls == null)
+			return false;
+
+		for(MessageSend call : calls) {
+			Type receiver = annotations.type(call.f0);
+			String name = annotations.method(call).name;
+			for(ClassInfo c : classes.values())		// Implementations in the receiver's class and its subclasses
+				if(c.type.isSubtypeOf(receiver) && leaking.contains(c.getMethod(name)))
+					return true;
+		}
+		return false;
+	}
+
+	// Local object variable of the current method, null for fields, parameters and other types
+	VariableInfo local(Node identifier) {
+		VariableInfo var = annotations.variable(identifier);
+		if(var == null || !var.type.isClass() || currMethod.getVar(var.name) != var)
+			return null;
+		return var;
+	}
+
+
+	public void visit(MainClass n) throws Exception {
+		currClass = classes.get(n.f1.f0.toString());
+		currMethod = currClass.getMethod("main");
+		body = new Body();
+		bodies.put(n, body);
+		n.f15.accept(this);		// Statements
+	}
+
+
+	public void visit(ClassDeclaration n) throws Exception {
+		currClass = classes.get(n.f1.f0.toString());
+		n.f4.accept(this);		// Method Declarations
+	}
+
+
+	public void visit(ClassExtendsDeclaration n) throws Exception {
+		currClass = classes.get(n.f1.f0.toString());
+		n.f6.accept(this);		// Method Declarations
+	}
+
+
+	public void visit(MethodDeclaration n) throws Exception {
+		currMethod = currClass.getMethod(n.f2.f0.toString());
+		body = new Body();
+		bodies.put(n, body);
+		methods.put(currMethod, body);
+		n.f8.accept(this);		// Statements
+		n.f10.accept(this);		// Return Expression
+	}
+
+
+	public void visit(AssignmentStatement n) throws Exception {
+		VariableInfo var = local(n.f0);
+		Node value = BoundsCheckElimination.unwrap(n.f2);
+		if(var != null && value instanceof AllocationExpression)
+			body.sites.computeIfAbsent(var, k -> new ArrayList<>()).add((AllocationExpression) value);
+		n.f2.accept(this);
+	}
+
+
+	public void visit(MessageSend n) throws Exception {
+		Node receiver = n.f0.f0.choice;
+		if(receiver instanceof ThisExpression)
+			body.calls.computeIfAbsent(null, k -> new ArrayList<>()).add(n);
+		else if(receiver instanceof Identifier && local(receiver) != null)
+			body.calls.computeIfAbsent(local(receiver), k -> new ArrayList<>()).add(n);
+		else
+			n.f0.accept(this);
+		n.f4.accept(this);		// Arguments
+	}
+
+	// Any other use of this or a local object lets it escape
+	public void visit(PrimaryExpression n) throws Exception {
+		Node choice = n.f0.choice;
+		if(choice instanceof ThisExpression)
+			body.thisEscapes = true;
+		else if(choice instanceof Identifier && local(choice) != null)
+			body.escaping.add(local(choice));
+		n.f0.accept(this);
+	}
+}
@@ -0,0 +1,64 @@
+package visitors;
+
+import java.util.*;
+import types.*;
+
+
+// Naturally aligned object layout, described to LLVM as a struct type per class
+//
+// An object starts with its vtable pointer, followed by the fields of its superclasses in their
+// layout and then its own fields from largest to smallest, so no field needs padding in front of
+// it except possibly the first one of a class. Subclass structs extend their parent's, so a field
+// has the same index in every class inheriting it. The offsets printed by the compiler keep the
+// declaration order layout and are not affected.
+class FieldLayout {
+	Map<ClassInfo, List<VariableInfo>> fields = new HashMap<>();		// Own and inherited fields in layout order
+	Map<VariableInfo, Integer> index = new HashMap<>();				// Struct element of each field, 0 is the vtable
+	Map<VariableInfo, ClassInfo> declaredIn = new HashMap<>();
+	Map<VariableInfo, Integer> offset = new HashMap<>();				// Byte offset of each field in the object
+	Map<ClassInfo, Integer> size = new HashMap<>();					// Object size in bytes
+
+	FieldLayout(SymbolTable classes) {
+		for(ClassInfo c : classes.values())
+			layout(c);
+	}
+
+
+	void layout(ClassInfo c) {
+		if(fields.containsKey(c))
+			return;
+
+		List<VariableInfo> layout = new ArrayList<>();
+		if(c.parent != null) {
+			layout(c.parent);
+			layout.addAll(fields.get(c.parent));
+		}
+
+		List<VariableInfo> own = new ArrayList<>(c.variables);
+		own.sort((a, b) -> b.typeOffset() - a.typeOffset());		// Stable, ties keep declaration order
+		for(VariableInfo var : own) {
+			index.put(var, layout.size() + 1);
+			declaredIn.put(var, c);
+			layout.add(var);
+		}
+		fields.put(c, layout);
+		// Every field is aligned to its size, the object to its vtable pointer
+		int end = 8;
+		for(VariableInfo var : layout) {
+			end = align(end, var.typeOffset());
+			offset.put(var, end);
+			end += var.typeOffset();
+		}
+		size.put(c, align(end, 8));
+	}
+
+
+	static int align(int offset, int alignment) {
+		return (offset + alignment - 1) / alignment * alignment;
+	}
+
+
+	static String structType(ClassInfo c) {
+		return "%class." + c.name;
+	}
+}
@@ -0,0 +1,454 @@
+package visitors;
+
+import java.io.*;
+import java.util.*;
+import ir.*;
+import ir.Instruction.Op;
+import types.*;
+import types.Type;
+import syntaxtree.*;
+import visitor.GJDepthFirst;
+
+
+// Translation of the checked syntax tree to the typed IR
+//
+// Objects, arrays and calls have the same representation as in LLVM_Visitor's plain translation:
+// locals and parameters live in stack slots, fields at byte offsets after the vtable pointer and
+// array elements after their i32 length. Each function is optimized by the pass manager and
+// printed as soon as it is built.
+public class IRGenerator extends GJDepthFirst<Value, Scope> {
+	static final IRType BYTE_PTR = IRType.BYTE.pointer();		// i8*, objects and raw memory
+	static final IRType VTABLE = BYTE_PTR.pointer();			// i8**
+
+	public SymbolTable classes;
+
+	Annotations annotations;			// Expression types and resolved names from type checking
+	CodegenOptions options;
+	PassManager passes;
+	Printer printer;
+	Writer out;
+	Map<ClassInfo, Global> vtables = new HashMap<>();
+	Function calloc, printInt, throwOob;
+	Builder builder;					// Function being generated
+	Map<VariableInfo, Register> slots;	// Stack slot of each parameter and local variable
+
+	public IRGenerator(SymbolTable classes, Annotations annotations, CodegenOptions options, Writer out) {
+		this.classes = classes;
+		this.annotations = annotations;
+		this.options = options;
+		this.out = out;
+		printer = new Printer(out);
+
+		passes = new PassManager();
+		if(options.constantFolding)
+			passes.add(new ConstantFolding());
+		passes.add(new SimplifyCFG());
+		passes.add(new DeadCodeElimination());
+	}
+
+	// IR type of values of a MiniJava type
+	static IRType irType(Type type) {
+		if(type == Type.INT)
+			return IRType.INT;
+		else if(type == Type.BOOLEAN)
+			return IRType.BOOL;
+		else if(type == Type.INT_ARRAY)
+			return IRType.INT.pointer();
+		else if(type == Type.BOOLEAN_ARRAY)
+			return IRType.BOOL.pointer();
+		else if(type == Type.STRING_ARRAY)
+			return VTABLE;
+
+		return BYTE_PTR;
+	}
+
+
+	static IRType signature(MethodInfo method) {
+		List<IRType> params = new ArrayList<>();
+		params.add(BYTE_PTR);		// this
+		for(VariableInfo param : method.parameters)
+			params.add(irType(param.type));
+		return IRType.function(irType(method.type), params, false);
+	}
+
+	// Finish the current function and write it
+	void emit() throws IOException {
+		passes.run(builder.function);
+		printer.print(builder.function);
+	}
+
+	// Pointer to the storage of a variable, a stack slot or a field of this
+	Value variablePointer(VariableInfo var, Scope scope) {
+		if(scope.currMethod.hasVar(var.name))
+			return slots.get(var);
+
+		Register fieldReg = builder.gep(builder.function.parameters.get(0), Constant.of(var.offset + 8));
+		return builder.bitcast(fieldReg, irType(var.type).pointer());
+	}
+
+	// Call throw_oob unless check holds, continuing in a new block
+	void check(Value cond, BasicBlock outOfBounds) {
+		BasicBlock inBounds = builder.addBlock("In Bounds");
+		builder.condBr(cond, inBounds, outOfBounds);
+		builder.block = inBounds;
+	}
+
+
+	BasicBlock outOfBounds() {
+		BasicBlock block = builder.addBlock("Out of Bounds");
+		BasicBlock current = builder.block;
+		builder.block = block;
+		builder.call(throwOob);
+		builder.unreachable();
+		builder.block = current;
+		return block;
+	}
+
+	// Check 0 <= index < length, evaluating the array between the two checks
+	Value checkedArray(Value indexReg, Node array, Scope scope) throws Exception {
+		BasicBlock outOfBounds = outOfBounds();
+		check(builder.binary(Op.SLT, Constant.of(-1), indexReg), outOfBounds);
+		Value arrReg = array.accept(this, scope);
+		check(builder.binary(Op.SLT, indexReg, arrayLength(arrReg)), outOfBounds);
+		return arrReg;
+	}
+
+
+	Value arrayLength(Value arrReg) {
+		Value lengthPtr = (arrReg.type == IRType.INT.pointer()) ? arrReg : builder.bitcast(arrReg, IRType.INT.pointer());
+		return builder.load(lengthPtr);
+	}
+
+	// Element after the i32 length, which takes 4 elements of a boolean array
+	Value elementPointer(Value arrReg, Value indexReg) {
+		int offset = (arrReg.type == IRType.BOOL.pointer()) ? 4 : 1;
+		return builder.gep(arrReg, builder.binary(Op.ADD, indexReg, Constant.of(offset)));
+	}
+
+
+	void createVtables() throws IOException {
+		ClassInfo[] classList = classes.values();
+		for(ClassInfo currClass : classList) {
+			String[] slots = new String[currClass.methodOffset / 8];
+			// Overriding methods take the slot of the method they override
+			for(ClassInfo c = currClass; (c != null && !c.name.equals(classList[0].name)); c = c.parent)
+				for(MethodInfo method : c.methods)
+					if(slots[method.offset / 8] == null)
+						slots[method.offset / 8] = "\n\ti8* bitcast (" + signature(method).pointer() + " @" + c.name + "." + method.name + " to i8*)";
+
+			Global vtable = new Global("." + currClass.name + "_vtable", IRType.array(slots.length, BYTE_PTR),
+				"[" + String.join(",", slots) + (slots.length > 0 ? "\n" : "") + "]", false);
+			vtables.put(currClass, vtable);
+			printer.print(vtable);
+			out.append("\n");
+		}
+	}
+
+
+	void createUtility() throws IOException {
+		out.append("\n; Utility\n");
+		calloc = new Function("calloc", IRType.function(BYTE_PTR, Arrays.asList(IRType.INT, IRType.INT), false));
+		Function printf = new Function("printf", IRType.function(IRType.INT, Arrays.asList(BYTE_PTR), true));
+		Function exit = new Function("exit", IRType.function(IRType.VOID, Arrays.asList(IRType.INT), false));
+		printer.print(calloc);
+		printer.print(printf);
+		printer.print(exit);
+
+		Global intFormat = new Global("_cint", IRType.array(4, IRType.BYTE), "c\"%d\\0a\\00\"", true);
+		Global oobMessage = new Global("_cOOB", IRType.array(15, IRType.BYTE), "c\"Out of bounds\\0a\\00\"", true);
+		out.append("\n");
+		printer.print(intFormat);
+		printer.print(oobMessage);
+
+		printInt = new Function("print_int", IRType.function(IRType.VOID, Arrays.asList(IRType.INT), false), "i");
+		builder = new Builder(printInt);
+		builder.call(printf, builder.bitcast(intFormat, BYTE_PTR), printInt.parameters.get(0));
+		builder.ret(null);
+		emit();
+
+		throwOob = new Function("throw_oob", IRType.function(IRType.VOID, new ArrayList<>(), false));
+		builder = new Builder(throwOob);
+		builder.call(printf, builder.bitcast(oobMessage, BYTE_PTR));
+		builder.call(exit, Constant.of(1));
+		builder.ret(null);
+		emit();
+	}
+
+	// Visit
+	public Value visit(Goal n, Scope scope) throws Exception {
+		createVtables();
+		createUtility();
+
+		out.append("\n\n; Method Declarations");
+		n.f0.accept(this, scope);		// Main Class
+		n.f1.accept(this, scope);		// Class Declarations
+		return null;
+	}
+
+
+	public Value visit(MainClass n, Scope scope) throws Exception {
+		ClassInfo currClass = classes.get(n.f1.f0.toString());
+		MethodInfo currMethod = currClass.getMethod("main");
+
+		builder = new Builder(new Function("main", IRType.function(IRType.INT, new ArrayList<>(), false)));
+		slots = new HashMap<>();
+		builder.alloca(VTABLE, n.f11.f0.toString());
+
+		Scope mainScope = new Scope(currClass, currMethod);
+		n.f14.accept(this, mainScope);		// Variable Declarations
+		n.f15.accept(this, mainScope);		// Statements
+
+		builder.ret(Constant.of(0));
+		emit();
+		return null;
+	}
+
+
+	public Value visit(ClassDeclaration n, Scope scope) throws Exception {
+		Scope classScope = new Scope(classes.get(n.f1.f0.toString()));
+		n.f4.accept(this, classScope);		// Method Declarations
+		return null;
+	}
+
+
+	public Value visit(ClassExtendsDeclaration n, Scope scope) throws Exception {
+		Scope classScope = new Scope(classes.get(n.f1.f0.toString()));
+		n.f6.accept(this, classScope);		// Method Declarations
+		return null;
+	}
+
+
+	public Value visit(VarDeclaration n, Scope scope) throws Exception {
+		VariableInfo var = scope.currMethod.getVar(n.f1.f0.toString());
+		slots.put(var, builder.alloca(irType(var.type), var.name));
+		return null;
+	}
+
+
+	public Value visit(MethodDeclaration n, Scope scope) throws Exception {
+		MethodInfo currMethod = scope.getMethod(n.f2.f0.toString());
+		List<String> names = new ArrayList<>();
+		names.add("this");
+		for(VariableInfo param : currMethod.parameters)
+			names.add("." + param.name);
+
+		Function function = new Function(scope.currClass.name + "." + currMethod.name, signature(currMethod), names.toArray(new String[0]));
+		builder = new Builder(function);
+		slots = new HashMap<>();
+		for(int i = 0; i < currMethod.parameters.size(); i++) {
+			VariableInfo param = currMethod.parameters.get(i);
+			Register slot = builder.alloca(irType(param.type), param.name);
+			builder.store(function.parameters.get(i + 1), slot);
+			slots.put(param, slot);
+		}
+
+		Scope methodScope = new Scope(scope.currClass, currMethod);
+		n.f7.accept(this, methodScope);		// Variable Declarations
+		n.f8.accept(this, methodScope);		// Statements
+		builder.ret(n.f10.accept(this, methodScope));
+		emit();
+		return null;
+	}
+
+
+	public Value visit(AssignmentStatement n, Scope scope) throws Exception {
+		VariableInfo var = annotations.variable(n.f0);
+		Value ptr = variablePointer(var, scope);
+		builder.store(n.f2.accept(this, scope), ptr);
+		return null;
+	}
+
+
+	public Value visit(ArrayAssignmentStatement n, Scope scope) throws Exception {
+		Value indexReg = n.f2.accept(this, scope);
+		Value arrReg = checkedArray(indexReg, n.f0, scope);
+		Value exprReg = n.f5.accept(this, scope);
+		builder.store(exprReg, elementPointer(arrReg, indexReg));
+		return null;
+	}
+
+
+	public Value visit(IfStatement n, Scope scope) throws Exception {
+		BasicBlock thenBlock = builder.addBlock("Then");
+		BasicBlock elseBlock = builder.addBlock("Else");
+		BasicBlock exitBlock = builder.addBlock("Exit If");
+
+		builder.condBr(n.f2.accept(this, scope), thenBlock, elseBlock);
+		builder.block = thenBlock;
+		n.f4.accept(this, scope);
+		builder.br(exitBlock);
+		builder.block = elseBlock;
+		n.f6.accept(this, scope);
+		builder.br(exitBlock);
+		builder.block = exitBlock;
+		return null;
+	}
+
+
+	public Value visit(WhileStatement n, Scope scope) throws Exception {
+		BasicBlock repeatBlock = builder.addBlock("Repeat");
+		BasicBlock doBlock = builder.addBlock("Do");
+		BasicBlock exitBlock = builder.addBlock("Exit loop");
+
+		builder.br(repeatBlock);
+		builder.block = repeatBlock;
+		builder.condBr(n.f2.accept(this, scope), doBlock, exitBlock);
+		builder.block = doBlock;
+		n.f4.accept(this, scope);
+		builder.br(repeatBlock);
+		builder.block = exitBlock;
+		return null;
+	}
+
+
+	public Value visit(PrintStatement n, Scope scope) throws Exception {
+		builder.call(printInt, n.f2.accept(this, scope));
+		return null;
+	}
+
+	// Right clause is evaluated only when the left one is true
+	public Value visit(AndExpression n, Scope scope) throws Exception {
+		Value left = n.f0.accept(this, scope);
+		BasicBlock leftBlock = builder.block;
+		BasicBlock rightBlock = builder.addBlock("And Expression");
+		BasicBlock exitBlock = builder.addBlock("And Expression");
+
+		builder.condBr(left, rightBlock, exitBlock);
+		builder.block = rightBlock;
+		Value right = n.f2.accept(this, scope);
+		builder.br(exitBlock);
+
+		BasicBlock rightEnd = builder.block;
+		builder.block = exitBlock;
+		Instruction phi = builder.phi(IRType.BOOL);
+		phi.addIncoming(Constant.FALSE, leftBlock);
+		phi.addIncoming(right, rightEnd);
+		return phi.result;
+	}
+
+
+	public Value visit(CompareExpression n, Scope scope) throws Exception {
+		Value left = n.f0.accept(this, scope);
+		return builder.binary(Op.SLT, left, n.f2.accept(this, scope));
+	}
+
+
+	public Value visit(PlusExpression n, Scope scope) throws Exception {
+		Value left = n.f0.accept(this, scope);
+		return builder.binary(Op.ADD, left, n.f2.accept(this, scope));
+	}
+
+
+	public Value visit(MinusExpression n, Scope scope) throws Exception {
+		Value left = n.f0.accept(this, scope);
+		return builder.binary(Op.SUB, left, n.f2.accept(this, scope));
+	}
+
+
+	public Value visit(TimesExpression n, Scope scope) throws Exception {
+		Value left = n.f0.accept(this, scope);
+		return builder.binary(Op.MUL, left, n.f2.accept(this, scope));
+	}
+
+
+	public Value visit(ArrayLookup n, Scope scope) throws Exception {
+		Value indexReg = n.f2.accept(this, scope);
+		Value arrReg = checkedArray(indexReg, n.f0, scope);
+		return builder.load(elementPointer(arrReg, indexReg));
+	}
+
+
+	public Value visit(ArrayLength n, Scope scope) throws Exception {
+		return arrayLength(n.f0.accept(this, scope));
+	}
+
+	// Call through the vtable slot of the method
+	public Value visit(MessageSend n, Scope scope) throws Exception {
+		MethodInfo method = annotations.method(n);
+		IRType signature = signature(method);
+
+		List<Value> args = new ArrayList<>();
+		args.add(n.f0.accept(this, scope));
+		if(n.f4.present()) {
+			ExpressionList exprList = (ExpressionList) n.f4.node;
+			args.add(exprList.f0.accept(this, scope));
+			for(Node term : exprList.f1.f0.nodes)
+				args.add(((ExpressionTerm) term).f1.accept(this, scope));
+		}
+
+		Value vtablePtr = builder.bitcast(args.get(0), VTABLE.pointer());
+		Value vtable = builder.load(vtablePtr);
+		Value methodPtr = builder.load(builder.gep(vtable, Constant.of(method.offset / 8)));
+		Value methodReg = builder.bitcast(methodPtr, signature.pointer());
+		return builder.call(methodReg, args.toArray(new Value[0]));
+	}
+
+
+	public Value visit(IntegerLiteral n, Scope scope) throws Exception {
+		return new Constant(IRType.INT, Long.parseLong(n.f0.toString()));		// Printed as written, like the direct translation
+	}
+
+
+	public Value visit(TrueLiteral n, Scope scope) throws Exception {
+		return Constant.TRUE;
+	}
+
+
+	public Value visit(FalseLiteral n, Scope scope) throws Exception {
+		return Constant.FALSE;
+	}
+
+
+	public Value visit(Identifier n, Scope scope) throws Exception {
+		return builder.load(variablePointer(annotations.variable(n), scope));
+	}
+
+
+	public Value visit(ThisExpression n, Scope scope) throws Exception {
+		return builder.function.parameters.get(0);
+	}
+
+
+	public Value visit(ArrayAllocationExpression n, Scope scope) throws Exception {
+		boolean isBoolean = n.f0.choice instanceof BooleanArrayAllocationExpression;
+		Value lengthReg = n.f0.accept(this, scope);
+		check(builder.binary(Op.SLT, Constant.of(-1), lengthReg), outOfBounds());
+
+		// Length header takes one int or four booleans
+		Value count = builder.binary(Op.ADD, lengthReg, Constant.of(isBoolean ? 4 : 1));
+		Value memReg = builder.call(calloc, Constant.of(isBoolean ? 1 : 4), count);
+		Value arrReg = builder.bitcast(memReg, IRType.INT.pointer());
+		builder.store(lengthReg, arrReg);
+		return isBoolean ? builder.bitcast(arrReg, IRType.BOOL.pointer()) : arrReg;
+	}
+
+
+	public Value visit(IntegerArrayAllocationExpression n, Scope scope) throws Exception {
+		return n.f3.accept(this, scope);
+	}
+
+
+	public Value visit(BooleanArrayAllocationExpression n, Scope scope) throws Exception {
+		return n.f3.accept(this, scope);
+	}
+
+
+	public Value visit(AllocationExpression n, Scope scope) throws Exception {
+		ClassInfo c = classes.get(n.f1.f0.toString());
+		Value objReg = builder.call(calloc, Constant.of(1), Constant.of(c.varOffset + 8));
+		Value vtablePtr = builder.bitcast(objReg, VTABLE.pointer());
+		Global vtable = vtables.get(c);
+		builder.store(builder.gep(vtable, Constant.of(0), Constant.of(0)), vtablePtr);
+		return objReg;
+	}
+
+
+	public Value visit(NotExpression n, Scope scope) throws Exception {
+		return builder.binary(Op.XOR, Constant.TRUE, n.f1.accept(this, scope));
+	}
+
+
+	public Value visit(BracketExpression n, Scope scope) throws Exception {
+		return n.f1.accept(this, scope);
+	}
+}
@@ -0,0 +1,80 @@
+package visitors;
+
+import java.util.*;
+import types.*;
+import syntaxtree.*;
+import visitor.DepthFirstVisitor;
+
+
+// Small leaf methods whose body can replace a monomorphic call to them
+//
+// A method qualifies when its body has no ifs, loops or calls, so inlining never recurses and the
+// inlined code needs no phis for its locals. Size is the number of tokens of its variable
+// declarations, statements and return expression, getters and setters take 3 to 7.
+class Inliner extends DepthFirstVisitor {
+	SymbolTable classes;
+	int budget;
+	Map<MethodInfo, MethodDeclaration> bodies = new HashMap<>();
+	ClassInfo currClass;
+
+	Inliner(Goal goal, SymbolTable classes, int budget) throws Exception {
+		this.classes = classes;
+		this.budget = budget;
+		goal.f1.accept(this);		// Class Declarations
+	}
+
+
+	// Declaration of method if calls to it can be inlined, null otherwise
+	MethodDeclaration body(MethodInfo method) {
+		return bodies.get(method);
+	}
+
+	// Size of a method body, or -1 if it has control flow or calls
+	static class Size extends DepthFirstVisitor {
+		int tokens;
+		boolean leaf = true;
+
+		public void visit(NodeToken n) {
+			tokens++;
+		}
+
+		public void visit(IfStatement n) {
+			leaf = false;
+		}
+
+		public void visit(WhileStatement n) {
+			leaf = false;
+		}
+
+		public void visit(MessageSend n) {
+			leaf = false;
+		}
+
+		static int of(MethodDeclaration n) throws Exception {
+			Size size = new Size();
+			n.f7.accept(size);
+			n.f8.accept(size);
+			n.f10.accept(size);
+			return size.leaf ? size.tokens : -1;
+		}
+	}
+
+
+	public void visit(ClassDeclaration n) throws Exception {
+		currClass = classes.get(n.f1.f0.toString());
+		n.f4.accept(this);		// Method Declarations
+	}
+
+
+	public void visit(ClassExtendsDeclaration n) throws Exception {
+		currClass = classes.get(n.f1.f0.toString());
+		n.f6.accept(this);		// Method Declarations
+	}
+
+
+	public void visit(MethodDeclaration n) throws Exception {
+		int size = Size.of(n);
+		if(size >= 0 && size <= budget)
+			bodies.put(currClass.getMethod(n.f2.f0.toString()), n);
+	}
+}
@@ -0,0 +1,317 @@
+package visitors;
+
+import java.io.*;
+import java.util.*;
+import jvm.ProgramLoader;
+import jvm.RuntimeSupport.OutOfBounds;
+import types.*;
+import types.Type;
+import syntaxtree.*;
+import visitor.GJDepthFirst;
+
+
+// Execution of the checked syntax tree, printing what the LLVM translation's program prints
+//
+// Objects keep their fields at the byte offsets of the symbol table, in an array as long as the
+// object's fields take in memory, and calls go through a vtable per class indexed by method offset
+// like the generated code. Array accesses are checked in the same order as the LLVM translation,
+// a failed check ends the program with "Out of bounds". The program runs like the classes of -fjvm,
+// through ProgramLoader.execute.
+public class Interpreter extends GJDepthFirst<Object, Interpreter.Frame> {
+	// Object of a MiniJava class
+	static class Instance {
+		ClassInfo type;
+		Object[] fields;		// Indexed by field offset
+
+		Instance(ClassInfo type) {
+			this.type = type;
+			fields = new Object[type.varOffset];
+			for(ClassInfo c = type; c != null; c = c.parent)
+				for(VariableInfo var : c.variables)
+					fields[var.offset] = zero(var.type);
+		}
+	}
+
+	// Method activation
+	static class Frame {
+		Instance self;
+		Map<VariableInfo, Object> locals = new HashMap<>();		// Parameters and local variables
+
+		Frame(Instance self) {
+			this.self = self;
+		}
+	}
+
+	public SymbolTable classes;
+
+	Annotations annotations;			// Expression types and resolved names from type checking
+	Map<ClassInfo, MethodDeclaration[]> vtables = new HashMap<>();
+	Map<MethodDeclaration, ClassInfo> declaringClass = new IdentityHashMap<>();
+	PrintStream out;
+
+	public Interpreter(SymbolTable classes, Annotations annotations) {
+		this.classes = classes;
+		this.annotations = annotations;
+	}
+
+
+	static Object zero(Type type) {
+		if(type == Type.INT)
+			return 0;
+		else if(type == Type.BOOLEAN)
+			return false;
+		return null;
+	}
+
+	// Run the program, printing to out
+	// Returns the exit status of the native program, 1 after an out of bounds access
+	public int run(Goal goal, PrintStream out) throws Exception {
+		this.out = new PrintStream(new BufferedOutputStream(out, 1 << 16), false);
+		createVtables(goal);
+		return ProgramLoader.execute(() -> goal.f0.accept(this, null), "interpreter", this.out);		// Main Class
+	}
+
+	// Declarations of each class's own and inherited methods by vtable slot
+	void createVtables(Goal goal) {
+		Map<ClassInfo, Map<String, MethodDeclaration>> declarations = new HashMap<>();
+		for(Node node : goal.f1.nodes) {
+			Node declaration = ((TypeDeclaration) node).f0.choice;
+			ClassInfo c;
+			NodeListOptional methods;
+			if(declaration instanceof ClassDeclaration) {
+				c = classes.get(((ClassDeclaration) declaration).f1.f0.toString());
+				methods = ((ClassDeclaration) declaration).f4;
+			}
+			else {
+				c = classes.get(((ClassExtendsDeclaration) declaration).f1.f0.toString());
+				methods = ((ClassExtendsDeclaration) declaration).f6;
+			}
+
+			Map<String, MethodDeclaration> own = new HashMap<>();
+			for(Node method : methods.nodes) {
+				own.put(((MethodDeclaration) method).f2.f0.toString(), (MethodDeclaration) method);
+				declaringClass.put((MethodDeclaration) method, c);
+			}
+			declarations.put(c, own);
+		}
+
+		for(ClassInfo currClass : declarations.keySet()) {
+			MethodDeclaration[] slots = new MethodDeclaration[currClass.methodOffset / 8];
+			// Overriding methods take the slot of the method they override
+			for(ClassInfo c = currClass; c != null && declarations.containsKey(c); c = c.parent)
+				for(MethodInfo method : c.methods)
+					if(slots[method.offset / 8] == null)
+						slots[method.offset / 8] = declarations.get(c).get(method.name);
+			vtables.put(currClass, slots);
+		}
+	}
+
+
+	Object invoke(MethodDeclaration n, Instance self, List<Object> args) throws Exception {
+		ClassInfo c = declaringClass.get(n);
+		MethodInfo method = c.getMethod(n.f2.f0.toString());
+		Frame frame = new Frame(self);
+		for(int i = 0; i < args.size(); i++)
+			frame.locals.put(method.parameters.get(i), args.get(i));
+		for(VariableInfo var : method.variables)
+			frame.locals.put(var, zero(var.type));
+
+		n.f8.accept(this, frame);		// Statements
+		return n.f10.accept(this, frame);
+	}
+
+
+	Object load(VariableInfo var, Frame frame) {
+		if(frame.locals.containsKey(var))
+			return frame.locals.get(var);
+		return frame.self.fields[var.offset];
+	}
+
+
+	void store(VariableInfo var, Object value, Frame frame) {
+		if(frame.locals.containsKey(var))
+			frame.locals.put(var, value);
+		else
+			frame.self.fields[var.offset] = value;
+	}
+
+
+	static int checkNonNegative(int value) {
+		if(value < 0)
+			throw new OutOfBounds();
+		return value;
+	}
+
+
+	static void checkIndex(int index, int length) {
+		if(index >= length)
+			throw new OutOfBounds();
+	}
+
+	// Visit
+	public Object visit(MainClass n, Frame frame) throws Exception {
+		ClassInfo currClass = classes.get(n.f1.f0.toString());
+		MethodInfo currMethod = currClass.getMethod("main");
+		Frame mainFrame = new Frame(null);
+		for(VariableInfo var : currMethod.variables)
+			mainFrame.locals.put(var, zero(var.type));
+
+		n.f15.accept(this, mainFrame);		// Statements
+		return null;
+	}
+
+
+	public Object visit(AssignmentStatement n, Frame frame) throws Exception {
+		store(annotations.variable(n.f0), n.f2.accept(this, frame), frame);
+		return null;
+	}
+
+	// The array is loaded after the index and checked before the value is evaluated
+	public Object visit(ArrayAssignmentStatement n, Frame frame) throws Exception {
+		int index = checkNonNegative((Integer) n.f2.accept(this, frame));
+		Object array = load(annotations.variable(n.f0), frame);
+		if(array instanceof boolean[]) {
+			checkIndex(index, ((boolean[]) array).length);
+			((boolean[]) array)[index] = (Boolean) n.f5.accept(this, frame);
+		}
+		else {
+			checkIndex(index, ((int[]) array).length);
+			((int[]) array)[index] = (Integer) n.f5.accept(this, frame);
+		}
+		return null;
+	}
+
+
+	public Object visit(IfStatement n, Frame frame) throws Exception {
+		if((Boolean) n.f2.accept(this, frame))
+			n.f4.accept(this, frame);
+		else
+			n.f6.accept(this, frame);
+		return null;
+	}
+
+
+	public Object visit(WhileStatement n, Frame frame) throws Exception {
+		while((Boolean) n.f2.accept(this, frame))
+			n.f4.accept(this, frame);
+		return null;
+	}
+
+
+	public Object visit(PrintStatement n, Frame frame) throws Exception {
+		out.println((int) (Integer) n.f2.accept(this, frame));
+		return null;
+	}
+
+	// Right clause is evaluated only when the left one is true
+	public Object visit(AndExpression n, Frame frame) throws Exception {
+		return (Boolean) n.f0.accept(this, frame) && (Boolean) n.f2.accept(this, frame);
+	}
+
+
+	public Object visit(CompareExpression n, Frame frame) throws Exception {
+		int left = (Integer) n.f0.accept(this, frame);
+		return left < (Integer) n.f2.accept(this, frame);
+	}
+
+
+	public Object visit(PlusExpression n, Frame frame) throws Exception {
+		int left = (Integer) n.f0.accept(this, frame);
+		return left + (Integer) n.f2.accept(this, frame);
+	}
+
+
+	public Object visit(MinusExpression n, Frame frame) throws Exception {
+		int left = (Integer) n.f0.accept(this, frame);
+		return left - (Integer) n.f2.accept(this, frame);
+	}
+
+
+	public Object visit(TimesExpression n, Frame frame) throws Exception {
+		int left = (Integer) n.f0.accept(this, frame);
+		return left * (Integer) n.f2.accept(this, frame);
+	}
+
+	// The index is checked to be non negative before the array is evaluated
+	public Object visit(ArrayLookup n, Frame frame) throws Exception {
+		int index = checkNonNegative((Integer) n.f2.accept(this, frame));
+		Object array = n.f0.accept(this, frame);
+		if(array instanceof boolean[]) {
+			checkIndex(index, ((boolean[]) array).length);
+			return ((boolean[]) array)[index];
+		}
+		checkIndex(index, ((int[]) array).length);
+		return ((int[]) array)[index];
+	}
+
+
+	public Object visit(ArrayLength n, Frame frame) throws Exception {
+		Object array = n.f0.accept(this, frame);
+		return (array instanceof boolean[]) ? ((boolean[]) array).length : ((int[]) array).length;
+	}
+
+	// Call the method in the receiver's vtable slot
+	public Object visit(MessageSend n, Frame frame) throws Exception {
+		MethodInfo method = annotations.method(n);
+		Instance receiver = (Instance) n.f0.accept(this, frame);
+
+		List<Object> args = new ArrayList<>();
+		if(n.f4.present()) {
+			ExpressionList exprList = (ExpressionList) n.f4.node;
+			args.add(exprList.f0.accept(this, frame));
+			for(Node term : exprList.f1.f0.nodes)
+				args.add(((ExpressionTerm) term).f1.accept(this, frame));
+		}
+		return invoke(vtables.get(receiver.type)[method.offset / 8], receiver, args);
+	}
+
+
+	public Object visit(IntegerLiteral n, Frame frame) throws Exception {
+		return (int) Long.parseLong(n.f0.toString());		// Wraps around like i32 arithmetic
+	}
+
+
+	public Object visit(TrueLiteral n, Frame frame) throws Exception {
+		return true;
+	}
+
+
+	public Object visit(FalseLiteral n, Frame frame) throws Exception {
+		return false;
+	}
+
+
+	public Object visit(Identifier n, Frame frame) throws Exception {
+		return load(annotations.variable(n), frame);
+	}
+
+
+	public Object visit(ThisExpression n, Frame frame) throws Exception {
+		return frame.self;
+	}
+
+
+	public Object visit(IntegerArrayAllocationExpression n, Frame frame) throws Exception {
+		return new int[checkNonNegative((Integer) n.f3.accept(this, frame))];
+	}
+
+
+	public Object visit(BooleanArrayAllocationExpression n, Frame frame) throws Exception {
+		return new boolean[checkNonNegative((Integer) n.f3.accept(this, frame))];
+	}
+
+
+	public Object visit(AllocationExpression n, Frame frame) throws Exception {
+		return new Instance(classes.get(n.f1.f0.toString()));
+	}
+
+
+	public Object visit(NotExpression n, Frame frame) throws Exception {
+		return !(Boolean) n.f1.accept(this, frame);
+	}
+
+
+	public Object visit(BracketExpression n, Frame frame) throws Exception {
+		return n.f1.accept(this, frame);
+	}
+}
@@ -0,0 +1,376 @@
+package visitors;
+
+import java.util.*;
+import jvm.*;
+import jvm.Code.Label;
+import types.*;
+import types.Type;
+import syntaxtree.*;
+import visitor.GJVoidDepthFirst;
+
+
+// Translation of the checked syntax tree to JVM class files, one per class in package minijava
+//
+// Each class extends the class of its parent, declares its variables as fields in offset order and
+// its methods as virtual methods, so overriding methods take the place of the ones they override
+// through JVM dispatch as they take their vtable slot in LLVM. Fields are accessed through the
+// class declaring them, which keeps shadowed fields apart. The main class also holds the stream
+// programs print to, set by ProgramLoader before main runs. Array accesses are checked in the order
+// the LLVM translation checks them, a failed check throws RuntimeSupport.OutOfBounds.
+public class JVMGenerator extends GJVoidDepthFirst<Scope> {
+	static final String PACKAGE = "minijava/";
+	static final String SUPPORT = "jvm/RuntimeSupport";
+	static final String PRINT_STREAM = "java/io/PrintStream";
+
+	public SymbolTable classes;
+	public Map<String, byte[]> classFiles = new LinkedHashMap<>();		// Class files by internal name
+	public String mainClass;
+
+	Annotations annotations;			// Expression types and resolved names from type checking
+	ClassFile classFile;				// Class being generated
+	Code code;							// Method being generated
+	Map<VariableInfo, Integer> slots;	// Local variable slot of each parameter and local variable
+
+	public JVMGenerator(SymbolTable classes, Annotations annotations) {
+		this.classes = classes;
+		this.annotations = annotations;
+	}
+
+
+	static String internalName(ClassInfo c) {
+		return PACKAGE + c.name;
+	}
+
+
+	static String descriptor(Type type) {
+		if(type == Type.INT)
+			return "I";
+		else if(type == Type.BOOLEAN)
+			return "Z";
+		else if(type == Type.INT_ARRAY)
+			return "[I";
+		else if(type == Type.BOOLEAN_ARRAY)
+			return "[Z";
+		else if(type == Type.STRING_ARRAY)
+			return "[Ljava/lang/String;";
+		else if(type == Type.VOID)
+			return "V";
+
+		return "L" + internalName(type.classInfo) + ";";
+	}
+
+
+	static String descriptor(MethodInfo method) {
+		StringBuilder descriptor = new StringBuilder("(");
+		for(VariableInfo param : method.parameters)
+			descriptor.append(descriptor(param.type));
+		return descriptor.append(")").append(descriptor(method.type)).toString();
+	}
+
+	// int and boolean values use the int instructions
+	static boolean isInt(Type type) {
+		return type == Type.INT || type == Type.BOOLEAN;
+	}
+
+	// Start a class with its fields and a constructor calling its parent's
+	void startClass(ClassInfo c) throws Exception {
+		String parent = (c.parent == null) ? "java/lang/Object" : internalName(c.parent);
+		classFile = new ClassFile(internalName(c), parent);
+		for(VariableInfo var : c.variables)
+			classFile.addField(ClassFile.ACC_PUBLIC, var.name, descriptor(var.type));
+
+		Code init = new Code(classFile, 1);
+		init.local(Code.ALOAD, 0);
+		init.invoke(Code.INVOKESPECIAL, parent, "<init>", "()V");
+		init.op(Code.RETURN);
+		classFile.addMethod(ClassFile.ACC_PUBLIC, "<init>", "()V", init);
+	}
+
+
+	void endClass() throws Exception {
+		classFiles.put(classFile.name, classFile.toByteArray());
+	}
+
+	// Assign slots to parameters after the first ones and to local variables, which start zeroed
+	void startMethod(MethodInfo method, int first) {
+		code = new Code(classFile, first + method.parameters.size());
+		slots = new HashMap<>();
+		int slot = first;
+		for(VariableInfo param : method.parameters)
+			slots.put(param, slot++);
+
+		for(VariableInfo var : method.variables) {
+			if(isInt(var.type)) {
+				code.push(0);
+				code.local(Code.ISTORE, slot);
+			}
+			else {
+				code.op(Code.ACONST_NULL);
+				code.local(Code.ASTORE, slot);
+			}
+			slots.put(var, slot++);
+		}
+	}
+
+	// Class declaring a field, the class itself or one of its ancestors
+	static ClassInfo declaringClass(ClassInfo c, VariableInfo field) {
+		while(!c.variables.contains(field))
+			c = c.parent;
+		return c;
+	}
+
+
+	void load(VariableInfo var, Scope scope) {
+		Integer slot = slots.get(var);
+		if(slot != null)
+			code.local(isInt(var.type) ? Code.ILOAD : Code.ALOAD, slot);
+		else {
+			code.local(Code.ALOAD, 0);
+			code.field(Code.GETFIELD, internalName(declaringClass(scope.currClass, var)), var.name, descriptor(var.type));
+		}
+	}
+
+	// Check 0 <= index < length for the array pushed after the index, leaving both in element access order
+	void checkIndex(Type arrayType) {
+		code.op(Code.SWAP);
+		code.op(Code.DUP2);
+		code.invoke(Code.INVOKESTATIC, SUPPORT, "check", "(" + descriptor(arrayType) + "I)V");
+	}
+
+	// Visit
+	public void visit(Goal n, Scope scope) throws Exception {
+		n.f0.accept(this, scope);		// Main Class
+		n.f1.accept(this, scope);		// Class Declarations
+	}
+
+
+	public void visit(MainClass n, Scope scope) throws Exception {
+		ClassInfo currClass = classes.get(n.f1.f0.toString());
+		MethodInfo currMethod = currClass.getMethod("main");
+
+		startClass(currClass);
+		mainClass = classFile.name;
+		classFile.addField(ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC, "out", "L" + PRINT_STREAM + ";");
+
+		startMethod(currMethod, 0);
+		n.f15.accept(this, new Scope(currClass, currMethod));		// Statements
+		code.op(Code.RETURN);
+		classFile.addMethod(ClassFile.ACC_PUBLIC | ClassFile.ACC_STATIC, "main", descriptor(currMethod), code);
+		endClass();
+	}
+
+
+	public void visit(ClassDeclaration n, Scope scope) throws Exception {
+		Scope classScope = new Scope(classes.get(n.f1.f0.toString()));
+		startClass(classScope.currClass);
+		n.f4.accept(this, classScope);		// Method Declarations
+		endClass();
+	}
+
+
+	public void visit(ClassExtendsDeclaration n, Scope scope) throws Exception {
+		Scope classScope = new Scope(classes.get(n.f1.f0.toString()));
+		startClass(classScope.currClass);
+		n.f6.accept(this, classScope);		// Method Declarations
+		endClass();
+	}
+
+
+	public void visit(MethodDeclaration n, Scope scope) throws Exception {
+		MethodInfo currMethod = scope.getMethod(n.f2.f0.toString());
+		Scope methodScope = new Scope(scope.currClass, currMethod);
+
+		startMethod(currMethod, 1);
+		n.f8.accept(this, methodScope);		// Statements
+		n.f10.accept(this, methodScope);	// Return Expression
+		code.op(isInt(currMethod.type) ? Code.IRETURN : Code.ARETURN);
+		classFile.addMethod(ClassFile.ACC_PUBLIC, currMethod.name, descriptor(currMethod), code);
+	}
+
+
+	public void visit(AssignmentStatement n, Scope scope) throws Exception {
+		VariableInfo var = annotations.variable(n.f0);
+		Integer slot = slots.get(var);
+		if(slot != null) {
+			n.f2.accept(this, scope);
+			code.local(isInt(var.type) ? Code.ISTORE : Code.ASTORE, slot);
+		}
+		else {
+			code.local(Code.ALOAD, 0);
+			n.f2.accept(this, scope);
+			code.field(Code.PUTFIELD, internalName(declaringClass(scope.currClass, var)), var.name, descriptor(var.type));
+		}
+	}
+
+	// The array is loaded after the index and checked before the value is evaluated
+	public void visit(ArrayAssignmentStatement n, Scope scope) throws Exception {
+		VariableInfo var = annotations.variable(n.f0);
+		n.f2.accept(this, scope);		// Index
+		load(var, scope);
+		checkIndex(var.type);
+		n.f5.accept(this, scope);
+		code.op((var.type == Type.BOOLEAN_ARRAY) ? Code.BASTORE : Code.IASTORE);
+	}
+
+
+	public void visit(IfStatement n, Scope scope) throws Exception {
+		Label elseLabel = new Label();
+		Label exitLabel = new Label();
+
+		n.f2.accept(this, scope);
+		code.jump(Code.IFEQ, elseLabel);
+		n.f4.accept(this, scope);
+		code.jump(Code.GOTO, exitLabel);
+		code.label(elseLabel);
+		n.f6.accept(this, scope);
+		code.label(exitLabel);
+	}
+
+
+	public void visit(WhileStatement n, Scope scope) throws Exception {
+		Label repeatLabel = new Label();
+		Label exitLabel = new Label();
+
+		code.label(repeatLabel);
+		n.f2.accept(this, scope);
+		code.jump(Code.IFEQ, exitLabel);
+		n.f4.accept(this, scope);
+		code.jump(Code.GOTO, repeatLabel);
+		code.label(exitLabel);
+	}
+
+
+	public void visit(PrintStatement n, Scope scope) throws Exception {
+		code.field(Code.GETSTATIC, mainClass, "out", "L" + PRINT_STREAM + ";");
+		n.f2.accept(this, scope);
+		code.invoke(Code.INVOKEVIRTUAL, PRINT_STREAM, "println", "(I)V");
+	}
+
+	// Right clause is evaluated only when the left one is true
+	public void visit(AndExpression n, Scope scope) throws Exception {
+		Label falseLabel = new Label();
+		Label exitLabel = new Label();
+
+		n.f0.accept(this, scope);
+		code.jump(Code.IFEQ, falseLabel);
+		n.f2.accept(this, scope);
+		code.jump(Code.GOTO, exitLabel);
+		code.label(falseLabel);
+		code.push(0);
+		code.label(exitLabel);
+	}
+
+
+	public void visit(CompareExpression n, Scope scope) throws Exception {
+		Label falseLabel = new Label();
+		Label exitLabel = new Label();
+
+		n.f0.accept(this, scope);
+		n.f2.accept(this, scope);
+		code.jump(Code.IF_ICMPGE, falseLabel);
+		code.push(1);
+		code.jump(Code.GOTO, exitLabel);
+		code.label(falseLabel);
+		code.push(0);
+		code.label(exitLabel);
+	}
+
+
+	public void visit(PlusExpression n, Scope scope) throws Exception {
+		n.f0.accept(this, scope);
+		n.f2.accept(this, scope);
+		code.op(Code.IADD);
+	}
+
+
+	public void visit(MinusExpression n, Scope scope) throws Exception {
+		n.f0.accept(this, scope);
+		n.f2.accept(this, scope);
+		code.op(Code.ISUB);
+	}
+
+
+	public void visit(TimesExpression n, Scope scope) throws Exception {
+		n.f0.accept(this, scope);
+		n.f2.accept(this, scope);
+		code.op(Code.IMUL);
+	}
+
+	// The index is checked to be non negative before the array is evaluated
+	public void visit(ArrayLookup n, Scope scope) throws Exception {
+		Type type = annotations.type(n.f0);
+		n.f2.accept(this, scope);		// Index
+		code.invoke(Code.INVOKESTATIC, SUPPORT, "nonNegative", "(I)I");
+		n.f0.accept(this, scope);
+		checkIndex(type);
+		code.op((type == Type.BOOLEAN_ARRAY) ? Code.BALOAD : Code.IALOAD);
+	}
+
+
+	public void visit(ArrayLength n, Scope scope) throws Exception {
+		n.f0.accept(this, scope);
+		code.op(Code.ARRAYLENGTH);
+	}
+
+	// Virtual call of the method as a member of the receiver's class
+	public void visit(MessageSend n, Scope scope) throws Exception {
+		MethodInfo method = annotations.method(n);
+		n.f0.accept(this, scope);		// Receiver
+		n.f4.accept(this, scope);		// Arguments
+		code.invoke(Code.INVOKEVIRTUAL, internalName(annotations.type(n.f0).classInfo), method.name, descriptor(method));
+	}
+
+
+	public void visit(IntegerLiteral n, Scope scope) throws Exception {
+		code.push((int) Long.parseLong(n.f0.toString()));		// Wraps around like i32 arithmetic
+	}
+
+
+	public void visit(TrueLiteral n, Scope scope) throws Exception {
+		code.push(1);
+	}
+
+
+	public void visit(FalseLiteral n, Scope scope) throws Exception {
+		code.push(0);
+	}
+
+
+	public void visit(Identifier n, Scope scope) throws Exception {
+		load(annotations.variable(n), scope);
+	}
+
+
+	public void visit(ThisExpression n, Scope scope) throws Exception {
+		code.local(Code.ALOAD, 0);
+	}
+
+
+	public void visit(IntegerArrayAllocationExpression n, Scope scope) throws Exception {
+		n.f3.accept(this, scope);
+		code.invoke(Code.INVOKESTATIC, SUPPORT, "nonNegative", "(I)I");
+		code.newArray(Code.T_INT);
+	}
+
+
+	public void visit(BooleanArrayAllocationExpression n, Scope scope) throws Exception {
+		n.f3.accept(this, scope);
+		code.invoke(Code.INVOKESTATIC, SUPPORT, "nonNegative", "(I)I");
+		code.newArray(Code.T_BOOLEAN);
+	}
+
+
+	public void visit(AllocationExpression n, Scope scope) throws Exception {
+		String name = internalName(classes.get(n.f1.f0.toString()));
+		code.type(Code.NEW, name);
+		code.op(Code.DUP);
+		code.invoke(Code.INVOKESPECIAL, name, "<init>", "()V");
+	}
+
+
+	public void visit(NotExpression n, Scope scope) throws Exception {
+		n.f1.accept(this, scope);
+		code.push(1);
+		code.op(Code.IXOR);
+	}
+}
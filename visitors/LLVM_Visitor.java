@@ -3,24 +3,61 @@ package visitors;
 import java.io.*;
 import java.util.*;
 import types.*;
+import types.Type;
 import syntaxtree.*;
+import visitor.DepthFirstVisitor;
 import visitor.GJDepthFirst;
 
 
 public class LLVM_Visitor extends GJDepthFirst<String, Scope> {
+	static final int ARENA_CHUNK = 1 << 24;		// Bytes mapped at a time for the allocation arena
+	static final int OUTPUT_BUFFER = 1 << 16;	// Bytes of output buffered before writing
+
 	public SymbolTable classes;
 
-	MiniJava_Visitor javaVisitor;		// Visitor that returns miniJava name/type of visited expression
+	Annotations annotations;			// Expression types and resolved names from type checking
+	CodegenOptions options;				// Optional passes
+	Map<Node, Integer> checks;			// Bounds checks each array access can omit
+	ClassHierarchy hierarchy;			// Finds calls with a single possible target, null unless devirtualizing or inlining
+	Inliner inliner;					// Methods small enough to inline, null unless inlining
+	FieldLayout layout;					// Packed struct layout of objects, null for the declaration order byte offsets
+	Map<Node, List<AllocationExpression>> stackAllocations;		// Non escaping allocation sites of each method, null unless enabled
+	Map<AllocationExpression, String> slots;					// Stack slot of each such site in the current function
+	Map<VariableInfo, String> values;	// SSA mode: current register or constant of each local
+	Map<String, String> negated;		// Operand of each xor emitted for a not expression
+	String block;						// Label of the basic block being generated
 	StringBuilder buffer;				// Holds generated LLVM code
+	Writer out;							// Streaming destination, null when buffering the whole module
 	int registerCount, labelCount;		// Ensure unique registers and labels
 
 
-	public LLVM_Visitor(SymbolTable classes) {
+	public LLVM_Visitor(SymbolTable classes, Annotations annotations) {
 		this.classes = classes;
-		javaVisitor = new MiniJava_Visitor(classes);
+		this.annotations = annotations;
+		options = new CodegenOptions();
+		checks = new IdentityHashMap<>();
 		buffer = new StringBuilder();
 		resetCounters();
 	}
+	// Stream each finished definition to out instead of holding the whole module in memory
+	public LLVM_Visitor(SymbolTable classes, Annotations annotations, Writer out) {
+		this(classes, annotations);
+		this.out = out;
+	}
+
+	public LLVM_Visitor(SymbolTable classes, Annotations annotations, CodegenOptions options, Writer out) {
+		this(classes, annotations, out);
+		this.options = options;
+	}
+
+	// Write completed code to the streaming destination and start over
+	void flush() throws IOException {
+		if(out == null)
+			return;
+
+		out.append(buffer);
+		buffer.setLength(0);
+	}
 
 	public void emit(String dest) throws Exception {
 		if(dest == null)		// Print buffer in console
@@ -46,41 +83,173 @@ public class LLVM_Visitor extends GJDepthFirst<String, Scope> {
 		labelCount = 1;
 		registerCount = 1;
 	}
-	// Return LLVM Register type from miniJava Type
-	String typeToLLVM (String type) {
-		switch(type) {
-			case "int":
-				return "i32";
-			case "boolean":
-				return "i1";
-			case "int[]":
-				return "i32*";
-			case "boolean[]":
-				return "i1*";
-			case "String[]":
-				return "i8**";
-			default:
-				return "i8*";
+	// Start a function body, in SSA mode locals live in registers and start with an explicit entry block
+	// Its label contains a '.' so it cannot clash with the alloca of a parameter named entry
+	void startFunction() {
+		resetCounters();
+		values = new HashMap<>();
+		negated = new HashMap<>();
+		slots = new IdentityHashMap<>();
+		block = "entry.0";
+		if(options.ssa)
+			buffer.append("\nentry.0:");
+	}
+	// Reserve a zeroed slot in the entry block for each object allocated by body that does not escape it
+	// With the collector, only objects whose pointer fields the stack scan reads as aligned words
+	void allocateSlots(Node body) {
+		if(stackAllocations == null || !stackAllocations.containsKey(body))
+			return;
+
+		for(AllocationExpression site : stackAllocations.get(body)) {
+			ClassInfo c = classes.get(site.f1.f0.toString());
+			if(options.gc && pointerOffsets(c).stream().anyMatch(offset -> offset % 8 != 0))
+				continue;
+
+			String slotReg = newRegister();
+			buffer.append("\n\t" + slotReg + " = alloca [" + objectSize(c) + " x i8], align 8");
+			slots.put(site, slotReg);
+		}
+	}
+	// Locals are kept in registers in SSA mode, they are never address taken
+	boolean inRegister(VariableInfo var, Scope scope) {
+		return (options.ssa || scope.inlined) && scope.currMethod.hasVar(var.name) && var.type != Type.STRING_ARRAY;
+	}
+	// Zero value of a type, the initial value of locals in SSA mode
+	String zero(Type type) {
+		return (type == Type.INT || type == Type.BOOLEAN) ? "0" : "null";
+	}
+	// Locals and parameters of the current method, in declaration order
+	List<VariableInfo> locals(Scope scope) {
+		List<VariableInfo> locals = new ArrayList<>(scope.currMethod.parameters);
+		locals.addAll(scope.currMethod.variables);
+		return locals;
+	}
+	// Values of locals at the start of block, merging the values at the end of two predecessors
+	Map<VariableInfo, String> join(Scope scope, Map<VariableInfo, String> values1, String block1, Map<VariableInfo, String> values2, String block2) {
+		Map<VariableInfo, String> joined = new HashMap<>();
+		for(VariableInfo var : locals(scope)) {
+			String value1 = values1.get(var), value2 = values2.get(var);
+			if(value1 == null || value1.equals(value2))
+				joined.put(var, value1);
+			else {
+				String phiReg = newRegister();
+				buffer.append("\n\t" + phiReg + " = phi " + typeToLLVM(var.type) + " [" + value1 + ", %" + block1 + "], [" + value2 + ", %" + block2 + "]");
+				joined.put(var, phiReg);
+			}
 		}
+		return joined;
+	}
+	// Value of an integer or boolean constant operand, null for registers
+	Integer constant(String value) {
+		if(!options.constantFolding || !value.matches("-?[0-9]+"))
+			return null;
+
+		try {
+			return Integer.parseInt(value);
+		}
+		catch(NumberFormatException e) {	// Literal that does not fit an i32, left to llc
+			return null;
+		}
+	}
+	// Result of a binary instruction with a constant operand, or null if it has to be emitted
+	String fold(String op, String value1, String value2) {
+		Integer const1 = constant(value1), const2 = constant(value2);
+		if(const1 != null && const2 != null)
+			switch(op) {
+				case "add":	return String.valueOf(const1 + const2);
+				case "sub":	return String.valueOf(const1 - const2);
+				case "mul":	return String.valueOf(const1 * const2);
+				case "slt":	return (const1 < const2) ? "1" : "0";
+			}
+
+		switch(op) {		// Identities, operands are already evaluated so dropping one has no side effects to lose
+			case "add":
+				if(const1 != null && const1 == 0)
+					return value2;
+				if(const2 != null && const2 == 0)
+					return value1;
+				break;
+			case "sub":
+				if(const2 != null && const2 == 0)
+					return value1;
+				break;
+			case "mul":
+				if((const1 != null && const1 == 0) || (const2 != null && const2 == 0))
+					return "0";
+				if(const1 != null && const1 == 1)
+					return value2;
+				if(const2 != null && const2 == 1)
+					return value1;
+				break;
+		}
+		return null;
+	}
+	// Locals assigned in a statement, these need phis at the header of a loop around it
+	static class AssignedVariables extends DepthFirstVisitor {
+		Annotations annotations;
+		Set<VariableInfo> assigned = new HashSet<>();
+
+		AssignedVariables(Annotations annotations) {
+			this.annotations = annotations;
+		}
+
+		public void visit(AssignmentStatement n) {
+			assigned.add(annotations.variable(n.f0));
+		}
+	}
+	// Return LLVM Register type from miniJava Type
+	String typeToLLVM (Type type) {
+		if(type == Type.INT)
+			return "i32";
+		else if(type == Type.BOOLEAN)
+			return "i1";
+		else if(type == Type.INT_ARRAY)
+			return "i32*";
+		else if(type == Type.BOOLEAN_ARRAY)
+			return "i1*";
+		else if(type == Type.STRING_ARRAY)
+			return "i8**";
+
+		return "i8*";
 	}
 	// Load Declared variable with given name in scope
 	String getVariableRegister(VariableInfo var, Scope scope) {
 		String retReg = "%" + var.name;
-		if (!scope.currMethod.hasVar(var.name)) {		// Variable declared in class scope
+		if (!scope.currMethod.hasVar(var.name) && layout != null) {		// Field element of the object struct
+			String structType = FieldLayout.structType(layout.declaredIn.get(var));
+			String objReg = newRegister();
+			retReg = newRegister();
+			buffer.append(
+				"\n\t" + objReg + " = bitcast i8* " + scope.thisReg + " to " + structType + "*" +
+				"\n\t" + retReg + " = getelementptr " + structType + ", " + structType + "* " + objReg + ", i32 0, i32 " + layout.index.get(var)
+			);
+		}
+		else if (!scope.currMethod.hasVar(var.name)) {		// Variable declared in class scope
 			String ptrReg = newRegister();
 			retReg = newRegister();
 			buffer.append(
-				"\n\t" + ptrReg + " = getelementptr i8, i8* %this, i32 " + (var.offset + 8) +
+				"\n\t" + ptrReg + " = getelementptr i8, i8* " + scope.thisReg + ", i32 " + (var.offset + 8) +
 				"\n\t" + retReg + " = bitcast i8* " + ptrReg + " to " + typeToLLVM(var.type) + "*"
 			);
 		}
 
 		return retReg;
 	}
+	// Value of a variable, a load unless it is a local kept in a register
+	String loadVariable(VariableInfo var, Scope scope) {
+		if(inRegister(var, scope))
+			return values.get(var);
+
+		String regType = typeToLLVM(var.type);
+		String ptrReg = getVariableRegister(var, scope);
+		String retReg = newRegister();
+		buffer.append("\n\t" + retReg + " = load " + regType + ", " + regType + "* " + ptrReg);
+		return retReg;
+	}
 	// Load array length stored in first 4 bytes of array
-	String loadArrayLength(String arrReg, String arrType) {
+	String loadArrayLength(String arrReg, Type arrType) {
 		String tempReg = arrReg;
-		if(arrType.equals("boolean[]")) {		// If array is i1* cast to i32* to get length
+		if(arrType == Type.BOOLEAN_ARRAY) {		// If array is i1* cast to i32* to get length
 			tempReg = newRegister();
 			buffer.append("\n\t" + tempReg + " = bitcast i1* " + arrReg + " to i32*");
 		}
@@ -89,38 +258,266 @@ public class LLVM_Visitor extends GJDepthFirst<String, Scope> {
 		buffer.append("\n\t" + lengthReg + " = load i32, i32* " + tempReg);
 		return lengthReg;
 	}
+	// Checks an array access can omit, or -1 to emit both checks around the evaluation of the array
+	int omittedChecks(Node access, boolean variableArray) {
+		if(!options.boundsCheckElimination)
+			return -1;
+
+		int omit = checks.getOrDefault(access, 0);
+		return (omit == 0 && !variableArray) ? -1 : omit;
+	}
+	// Throw out of bounds error unless 0 <= index < length, as unsigned compare catches negative indices too
+	void checkBounds(String indexReg, String lengthReg) {
+		String label1 = newLabel();
+		String label2 = newLabel();
+		String checkReg = newRegister();
+		buffer.append(
+			"\n\t" + checkReg + " = icmp ult i32 " + indexReg + ", " + lengthReg +
+			"\n\tbr i1 "+ checkReg + ", label %"+ label2 + ", label %" + label1 +
+			"\n" + label1 + ":\t; Out of Bounds" +
+			"\n\tcall void @throw_oob()" +
+			"\n\tunreachable" +
+			"\n" + label2 + ":\t; In Bounds"
+		);
+		block = label2;
+	}
+	// Throw out of bounds error if index is negative
+	void checkLowerBound(String indexReg) {
+		String label1 = newLabel();
+		String label2 = newLabel();
+		String checkReg = newRegister();
+		buffer.append(
+			"\n\t" + checkReg + " = icmp slt i32 " + indexReg + ", 0" +
+			"\n\tbr i1 "+ checkReg + ", label %"+ label1 + ", label %" + label2 +
+			"\n" + label1 + ":\t; Out of Bounds" +
+			"\n\tcall void @throw_oob()" +
+			"\n\tunreachable" +
+			"\n" + label2 + ":\t; In Bounds"
+		);
+		block = label2;
+	}
+	// Pointer to element at index, after the length stored in the first 4 bytes
+	String elementPointer(String arrReg, String indexReg, String regType) {
+		String offset = String.valueOf(regType.equals("i1") ? 4 : 1);
+		String offsetReg = fold("add", indexReg, offset);
+		if(offsetReg == null) {
+			offsetReg = newRegister();
+			buffer.append("\n\t" + offsetReg + " = add i32 " + indexReg + ", " + offset);
+		}
+
+		String ptrReg = newRegister();
+		buffer.append("\n\t" + ptrReg + " = getelementptr " + regType + ", " + regType + "* " + arrReg + ", i32 " + offsetReg);
+		return ptrReg;
+	}
+	// Pointer to the 64 bit word holding element index of a packed boolean array, after the 8 byte length header
+	String wordPointer(String arrReg, String indexReg) {
+		Integer index = constant(indexReg);
+		String wordReg = (index != null) ? String.valueOf((index >>> 6) + 1) : newRegister();
+		if(index == null) {
+			String shiftReg = newRegister();
+			buffer.append(
+				"\n\t" + shiftReg + " = lshr i32 " + indexReg + ", 6" +
+				"\n\t" + wordReg + " = add i32 " + shiftReg + ", 1"
+			);
+		}
+
+		String wordsReg = newRegister();
+		String ptrReg = newRegister();
+		buffer.append(
+			"\n\t" + wordsReg + " = bitcast i1* " + arrReg + " to i64*" +
+			"\n\t" + ptrReg + " = getelementptr i64, i64* " + wordsReg + ", i32 " + wordReg
+		);
+		return ptrReg;
+	}
+	// Mask selecting the bit of element index in its word
+	String bitMask(String indexReg) {
+		Integer index = constant(indexReg);
+		if(index != null)
+			return String.valueOf(1L << (index & 63));
+
+		String bitReg = newRegister();
+		String extReg = newRegister();
+		String maskReg = newRegister();
+		buffer.append(
+			"\n\t" + bitReg + " = and i32 " + indexReg + ", 63" +
+			"\n\t" + extReg + " = zext i32 " + bitReg + " to i64" +
+			"\n\t" + maskReg + " = shl i64 1, " + extReg
+		);
+		return maskReg;
+	}
+	// Element of a packed boolean array
+	String loadBit(String arrReg, String indexReg) {
+		String ptrReg = wordPointer(arrReg, indexReg);
+		String maskReg = bitMask(indexReg);
+		String wordReg = newRegister();
+		String bitReg = newRegister();
+		String retReg = newRegister();
+		buffer.append(
+			"\n\t" + wordReg + " = load i64, i64* " + ptrReg +
+			"\n\t" + bitReg + " = and i64 " + wordReg + ", " + maskReg +
+			"\n\t" + retReg + " = icmp ne i64 " + bitReg + ", 0"
+		);
+		return retReg;
+	}
+	// Set or clear an element of a packed boolean array
+	void storeBit(String arrReg, String indexReg, String valueReg) {
+		String ptrReg = wordPointer(arrReg, indexReg);
+		String maskReg = bitMask(indexReg);
+		Integer value = constant(valueReg);
+		String wordReg = newRegister();
+		String newReg = newRegister();
+		buffer.append("\n\t" + wordReg + " = load i64, i64* " + ptrReg);
+
+		if(value != null && value != 0)
+			buffer.append("\n\t" + newReg + " = or i64 " + wordReg + ", " + maskReg);
+		else {
+			String clearReg = newRegister();
+			buffer.append("\n\t" + clearReg + " = and i64 " + wordReg + ", " + inverted(maskReg));
+			if(value != null)
+				newReg = clearReg;
+			else {
+				String setReg = newRegister();
+				buffer.append(
+					"\n\t" + setReg + " = select i1 " + valueReg + ", i64 " + maskReg + ", i64 0" +
+					"\n\t" + newReg + " = or i64 " + clearReg + ", " + setReg
+				);
+			}
+		}
+		buffer.append("\n\tstore i64 " + newReg + ", i64* " + ptrReg);
+	}
+	// All bits but those of mask
+	String inverted(String maskReg) {
+		if(maskReg.matches("-?[0-9]+"))
+			return String.valueOf(~Long.parseLong(maskReg));
+
+		String retReg = newRegister();
+		buffer.append("\n\t" + retReg + " = xor i64 " + maskReg + ", -1");
+		return retReg;
+	}
+	// Allocate zeroed memory for count elements of elementSize bytes into retReg, map lists its pointer fields for the collector
+	// With the arena the pointer bump is inline, sizes are rounded up to 8 bytes to keep objects aligned
+	void allocate(String retReg, int elementSize, String count, String map) {
+		if(!options.arena && !options.gc) {
+			buffer.append("\n\t" + retReg + " = call i8* @calloc(i32 " + elementSize + ", i32 " + count + ")");
+			return;
+		}
+
+		String sizeReg;
+		if(count.matches("[0-9]+"))
+			sizeReg = String.valueOf((Long.parseLong(count) * elementSize + 7) & -8L);
+		else {
+			String countReg = newRegister();
+			String bytesReg = newRegister();
+			String paddedReg = newRegister();
+			sizeReg = newRegister();
+			buffer.append(
+				"\n\t" + countReg + " = zext i32 " + count + " to i64" +
+				"\n\t" + bytesReg + " = mul i64 " + countReg + ", " + elementSize +
+				"\n\t" + paddedReg + " = add i64 " + bytesReg + ", 7" +
+				"\n\t" + sizeReg + " = and i64 " + paddedReg + ", -8"
+			);
+		}
+
+		if(options.gc) {
+			buffer.append("\n\t" + retReg + " = call i8* @gc_alloc(i64 " + sizeReg + ", i32* " + map + ")");
+			return;
+		}
+
+		String label1 = newLabel();
+		String label2 = newLabel();
+		String label3 = newLabel();
+		String freeReg = newRegister();
+		String endReg = newRegister();
+		String nextReg = newRegister();
+		String fitsReg = newRegister();
+		String refillReg = newRegister();
+		buffer.append(
+			"\n\t" + freeReg + " = load i8*, i8** @_arena_next" +
+			"\n\t" + endReg + " = load i8*, i8** @_arena_end" +
+			"\n\t" + nextReg + " = getelementptr i8, i8* " + freeReg + ", i64 " + sizeReg +
+			"\n\t" + fitsReg + " = icmp ule i8* " + nextReg + ", " + endReg +
+			"\n\tbr i1 " + fitsReg + ", label %" + label1 + ", label %" + label2 +
+			"\n" + label1 + ":\t; Bump" +
+			"\n\tstore i8* " + nextReg + ", i8** @_arena_next" +
+			"\n\tbr label %" + label3 +
+			"\n" + label2 + ":\t; Refill" +
+			"\n\t" + refillReg + " = call i8* @arena_refill(i64 " + sizeReg + ")" +
+			"\n\tbr label %" + label3 +
+			"\n" + label3 + ":\t; Allocated" +
+			"\n\t" + retReg + " = phi i8* [" + freeReg + ", %" + label1 + "], [" + refillReg + ", %" + label2 + "]"
+		);
+		block = label3;
+	}
+	// Boolean arrays are used as i1* past their i32 length
+	String toBooleanArray(String arrReg) {
+		String retReg = newRegister();
+		buffer.append("\n\t" + retReg + " = bitcast i32* " + arrReg + " to i1*");
+		return retReg;
+	}
+
+	void createStructs() {
+		for(ClassInfo c : classes.values()) {
+			List<String> elements = new ArrayList<>();
+			elements.add("i8**");		// Vtable
+			for(VariableInfo var : layout.fields.get(c))
+				elements.add(typeToLLVM(var.type));
+
+			buffer.append(FieldLayout.structType(c) + " = type { " + String.join(", ", elements) + " }\n");
+		}
+		buffer.append("\n");
+	}
 
 	void createVtables() {
 		ClassInfo[] classList = classes.values();
 		// Create vtable for each class
 		for(ClassInfo currClass : classList) {
-			StringBuilder tempBuffer = new StringBuilder();
-			List<String> allMethods = new ArrayList<>();
-			buffer.append("@." + currClass.name + "_vtable = global [" + (currClass.methodOffset / 8) + " x i8*] [");
-			// Find all methods of class inherited or not
-			for(ClassInfo c = currClass; (c != null && !c.name.equals(classList[0].name)); c = c.parent) {
-				StringBuilder temp = new StringBuilder();
-				// For all methds of current class (c)
+			String[] slots = new String[currClass.methodOffset / 8];
+			buffer.append("@." + currClass.name + "_vtable = global [" + slots.length + " x i8*] [");
+			// Find all methods of class inherited or not, overriding methods take the slot of the method they override
+			for(ClassInfo c = currClass; (c != null && !c.name.equals(classList[0].name)); c = c.parent)
 				for (MethodInfo method : c.methods)
-					if(!allMethods.contains(method.name)) {		// Check if methods already in vtable
-						allMethods.add(method.name);
-						temp.append("\n\ti8* bitcast (" + typeToLLVM(method.type) + " (i8*");
+					if(slots[method.offset / 8] == null) {		// Check if slot is already filled by an override
+						StringBuilder temp = new StringBuilder("\n\ti8* bitcast (" + typeToLLVM(method.type) + " (i8*");
 
 						for(VariableInfo param : method.parameters)
 							temp.append(", " + typeToLLVM(param.type));
 
-						temp.append(")* @" + c.name + "." + method.name + " to i8*),");
+						slots[method.offset / 8] = temp.append(")* @" + c.name + "." + method.name + " to i8*)").toString();
 					}
 
-				tempBuffer.insert(0, temp);
-			}
+			buffer.append(String.join(",", slots) + (slots.length > 0 ? "\n" : "") + "]\n\n");
+		}
+	}
 
-			int length = tempBuffer.length();
-			if(length > 0 && tempBuffer.charAt(length - 1) == ',')
-				tempBuffer.setCharAt(length - 1, '\n');
+	// Byte offsets of the object and array fields of each class, ending with -1
+	void createGcMaps() {
+		for(ClassInfo c : classes.values()) {
+			List<String> offsets = new ArrayList<>();
+			for(int offset : pointerOffsets(c))
+				offsets.add("i32 " + offset);
+			offsets.add("i32 -1");
 
-			buffer.append(tempBuffer + "]\n\n");
+			buffer.append("@." + c.name + "_gcmap = constant [" + offsets.size() + " x i32] [" + String.join(", ", offsets) + "]\n");
 		}
+		buffer.append("\n");
+	}
+
+	List<Integer> pointerOffsets(ClassInfo c) {
+		List<Integer> offsets = new ArrayList<>();
+		for(; c != null; c = c.parent)
+			for(VariableInfo var : c.variables)
+				if(var.type.isClass() || var.type.isArray())
+					offsets.add(layout != null ? layout.offset.get(var) : var.offset + 8);
+		return offsets;
+	}
+	// Bytes of an object of class c, its vtable pointer included
+	int objectSize(ClassInfo c) {
+		return (layout != null) ? layout.size.get(c) : c.varOffset + 8;
+	}
+	// Pointer to the first offset of the map of class c
+	String gcMap(ClassInfo c) {
+		int length = pointerOffsets(c).size() + 1;
+		return "getelementptr ([" + length + " x i32], [" + length + " x i32]* @." + c.name + "_gcmap, i32 0, i32 0)";
 	}
 
 	void createUtility() {
@@ -132,28 +529,192 @@ public class LLVM_Visitor extends GJDepthFirst<String, Scope> {
 			"\n" +
 			"\n@_cint = constant [4 x i8] c\"%d\\0a\\00\"" +
 			"\n@_cOOB = constant [15 x i8] c\"Out of bounds\\0a\\00\"" +
-			"\n" +		// Print integer
-			"\ndefine void @print_int(i32 %i) {" +
-			"\n\t%_str = bitcast [4 x i8]* @_cint to i8*" +
-			"\n\tcall i32 (i8*, ...) @printf(i8* %_str, i32 %i)" +
-			"\n\tret void" +
-			"\n}" +
+			"\n"
+		);
+
+		if(options.bufferedOutput)
+			createBufferedOutput();
+		else
+			buffer.append(			// Print integer
+				"\ndefine void @print_int(i32 %i) {" +
+				"\n\t%_str = bitcast [4 x i8]* @_cint to i8*" +
+				"\n\tcall i32 (i8*, ...) @printf(i8* %_str, i32 %i)" +
+				"\n\tret void" +
+				"\n}"
+			);
+
+		buffer.append(
 			"\n" +		// Print Out of bounds error and exit
 			"\ndefine void @throw_oob() {" +
+			(options.bufferedOutput ? "\n\tcall void @flush_out()" : "") +
 			"\n\t%_str = bitcast [15 x i8]* @_cOOB to i8*" +
 			"\n\tcall i32 (i8*, ...) @printf(i8* %_str)" +
 			"\n\tcall void @exit(i32 1)" +
 			"\n\tret void" +
 			"\n}"
 		);
+
+		if(options.gc)
+			createGarbageCollector();
+		else if(options.arena)
+			createArena();
+	}
+	// Print integers by formatting them into a static buffer, written to stdout when full, on errors and at the end of main
+	void createBufferedOutput() {
+		String bufferType = "[" + OUTPUT_BUFFER + " x i8]";
+		buffer.append(
+			"\ndeclare i64 @write(i32, i8*, i64)" +
+			"\ndeclare void @llvm.memcpy.p0i8.p0i8.i64(i8*, i8*, i64, i1)" +
+			"\n" +
+			"\n@_out = global " + bufferType + " zeroinitializer" +
+			"\n@_out_len = global i32 0" +
+			"\n" +		// Write the whole buffer, retrying short writes
+			"\ndefine void @flush_out() {" +
+			"\nentry:" +
+			"\n\t%_len = load i32, i32* @_out_len" +
+			"\n\tstore i32 0, i32* @_out_len" +
+			"\n\tbr label %loop" +
+			"\nloop:" +
+			"\n\t%_done = phi i32 [0, %entry], [%_next, %write]" +
+			"\n\t%_more = icmp slt i32 %_done, %_len" +
+			"\n\tbr i1 %_more, label %write, label %end" +
+			"\nwrite:" +
+			"\n\t%_ptr = getelementptr " + bufferType + ", " + bufferType + "* @_out, i32 0, i32 %_done" +
+			"\n\t%_left = sub i32 %_len, %_done" +
+			"\n\t%_count = zext i32 %_left to i64" +
+			"\n\t%_written = call i64 @write(i32 1, i8* %_ptr, i64 %_count)" +
+			"\n\t%_written32 = trunc i64 %_written to i32" +
+			"\n\t%_next = add i32 %_done, %_written32" +
+			"\n\t%_failed = icmp slt i64 %_written, 1" +
+			"\n\tbr i1 %_failed, label %end, label %loop" +
+			"\nend:" +
+			"\n\tret void" +
+			"\n}" +
+			"\n" +		// Print integer, digits are formatted backwards from the end of a small buffer
+			"\ndefine void @print_int(i32 %i) {" +
+			"\nentry:" +
+			"\n\t%_digits = alloca [11 x i8]" +
+			"\n\t%_len = load i32, i32* @_out_len" +
+			"\n\t%_full = icmp sgt i32 %_len, " + (OUTPUT_BUFFER - 12) +
+			"\n\tbr i1 %_full, label %flush, label %format" +
+			"\nflush:" +
+			"\n\tcall void @flush_out()" +
+			"\n\tbr label %format" +
+			"\nformat:" +
+			"\n\t%_used = phi i32 [%_len, %entry], [0, %flush]" +
+			"\n\t%_wide = sext i32 %i to i64" +
+			"\n\t%_negative = icmp slt i64 %_wide, 0" +
+			"\n\t%_negated = sub i64 0, %_wide" +
+			"\n\t%_value = select i1 %_negative, i64 %_negated, i64 %_wide" +
+			"\n\tbr label %digit" +
+			"\ndigit:" +
+			"\n\t%_rest = phi i64 [%_value, %format], [%_quotient, %digit]" +
+			"\n\t%_end = phi i32 [11, %format], [%_pos, %digit]" +
+			"\n\t%_pos = sub i32 %_end, 1" +
+			"\n\t%_quotient = udiv i64 %_rest, 10" +
+			"\n\t%_remainder = urem i64 %_rest, 10" +
+			"\n\t%_low = trunc i64 %_remainder to i8" +
+			"\n\t%_char = add i8 %_low, 48" +
+			"\n\t%_slot = getelementptr [11 x i8], [11 x i8]* %_digits, i32 0, i32 %_pos" +
+			"\n\tstore i8 %_char, i8* %_slot" +
+			"\n\t%_moreDigits = icmp ne i64 %_quotient, 0" +
+			"\n\tbr i1 %_moreDigits, label %digit, label %copy" +
+			"\ncopy:" +		// At most 10 digits, so the sign slot is in the buffer and unused unless negative
+			"\n\t%_signPos = sub i32 %_pos, 1" +
+			"\n\t%_signSlot = getelementptr [11 x i8], [11 x i8]* %_digits, i32 0, i32 %_signPos" +
+			"\n\tstore i8 45, i8* %_signSlot" +
+			"\n\t%_start = select i1 %_negative, i32 %_signPos, i32 %_pos" +
+			"\n\t%_src = getelementptr [11 x i8], [11 x i8]* %_digits, i32 0, i32 %_start" +
+			"\n\t%_size = sub i32 11, %_start" +
+			"\n\t%_size64 = zext i32 %_size to i64" +
+			"\n\t%_dest = getelementptr " + bufferType + ", " + bufferType + "* @_out, i32 0, i32 %_used" +
+			"\n\tcall void @llvm.memcpy.p0i8.p0i8.i64(i8* %_dest, i8* %_src, i64 %_size64, i1 false)" +
+			"\n\t%_newline = add i32 %_used, %_size" +
+			"\n\t%_newlineSlot = getelementptr " + bufferType + ", " + bufferType + "* @_out, i32 0, i32 %_newline" +
+			"\n\tstore i8 10, i8* %_newlineSlot" +
+			"\n\t%_total = add i32 %_newline, 1" +
+			"\n\tstore i32 %_total, i32* @_out_len" +
+			"\n\tret void" +
+			"\n}"
+		);
+	}
+	// Zeroed memory of size bytes from mmap, with Linux's PROT_READ | PROT_WRITE and MAP_PRIVATE | MAP_ANONYMOUS
+	// The flags differ on other systems, which is why -O does not enable the arena
+	String mmap(String size) {
+		return "call i8* @mmap(i8* null, i64 " + size + ", i32 3, i32 34, i32 -1, i64 0)";
+	}
+	// Bump pointer allocation from zeroed chunks mapped with mmap, refilled when the next object does not fit
+	// A failed mapping ends the program with "Out of memory" and exit status 1
+	void createArena() {
+		buffer.append(
+			"\n" +
+			"\ndeclare i8* @mmap(i8*, i64, i32, i32, i32, i64)" +
+			"\n" +
+			"\n@_arena_next = thread_local global i8* null" +
+			"\n@_arena_end = thread_local global i8* null" +
+			"\n@_cOOM = constant [15 x i8] c\"Out of memory\\0a\\00\"" +
+			"\n" +		// Start a new chunk holding size bytes, larger objects get a mapping of their own
+			"\ndefine i8* @arena_refill(i64 %size) {" +
+			"\n\t%_large = icmp ugt i64 %size, " + ARENA_CHUNK +
+			"\n\tbr i1 %_large, label %large, label %chunk" +
+			"\nlarge:" +
+			"\n\t%_mem = " + mmap("%size") +
+			"\n\t%_memFailed = icmp eq i8* %_mem, inttoptr (i64 -1 to i8*)" +		// MAP_FAILED
+			"\n\tbr i1 %_memFailed, label %failed, label %mapped" +
+			"\nmapped:" +
+			"\n\tret i8* %_mem" +
+			"\nfailed:" +
+			(options.bufferedOutput ? "\n\tcall void @flush_out()" : "") +
+			"\n\t%_str = bitcast [15 x i8]* @_cOOM to i8*" +
+			"\n\tcall i32 (i8*, ...) @printf(i8* %_str)" +
+			"\n\tcall void @exit(i32 1)" +
+			"\n\tret i8* null" +
+			"\nchunk:" +
+			"\n\t%_chunk = " + mmap(String.valueOf(ARENA_CHUNK)) +
+			"\n\t%_chunkFailed = icmp eq i8* %_chunk, inttoptr (i64 -1 to i8*)" +
+			"\n\tbr i1 %_chunkFailed, label %failed, label %refill" +
+			"\nrefill:" +
+			"\n\t%_next = getelementptr i8, i8* %_chunk, i64 %size" +
+			"\n\t%_end = getelementptr i8, i8* %_chunk, i64 " + ARENA_CHUNK +
+			"\n\tstore i8* %_next, i8** @_arena_next" +
+			"\n\tstore i8* %_end, i8** @_arena_end" +
+			"\n\tret i8* %_chunk" +
+			"\n}"
+		);
+	}
+
+	// Mark-sweep collector allocating with gc_alloc, defined by runtime/gc.c which is linked with the generated code
+	void createGarbageCollector() {
+		buffer.append(
+			"\n" +
+			"\ndeclare void @gc_init(i8*)" +		// Bottom of the stack scanned for pointers
+			"\ndeclare i8* @gc_alloc(i64, i32*)" +		// Zeroed payload size and pointer map
+			"\ndeclare i8* @llvm.frameaddress.p0i8(i32)"
+		);
 	}
 
 	// Visit
 	public String visit(Goal n, Scope scope) throws Exception {
+		if(options.boundsCheckElimination)
+			checks = BoundsCheckElimination.analyze(n, classes, annotations);
+		if(options.devirtualize || options.inlineBudget > 0)
+			hierarchy = new ClassHierarchy(classes);
+		if(options.inlineBudget > 0)
+			inliner = new Inliner(n, classes, options.inlineBudget);
+		if(options.packFields) {
+			layout = new FieldLayout(classes);
+			createStructs();
+		}
+		if(options.escapeAnalysis)
+			stackAllocations = EscapeAnalysis.analyze(n, classes, annotations);
+
 		createVtables();
+		if(options.gc)
+			createGcMaps();
 		createUtility();
 
 		buffer.append("\n\n; Method Declarations");
+		flush();
 		n.f0.accept(this, scope);		// Main Class
 		n.f1.accept(this, scope);		// Class Declarations
 		return null;
@@ -161,65 +722,76 @@ public class LLVM_Visitor extends GJDepthFirst<String, Scope> {
 
 
 	public String visit(MainClass n,  Scope scope) throws Exception {
-		ClassInfo currClass = classes.get(n.f1.accept(javaVisitor, scope));
+		ClassInfo currClass = classes.get(n.f1.f0.toString());
 		MethodInfo currMethod = currClass.getMethod("main");
 
-		resetCounters();
-		buffer.append(
-			"\ndefine i32 @main() {" +
-			"\n\t%" + n.f11.accept(javaVisitor, scope) + " = alloca i8**"
-		);
+		buffer.append("\ndefine i32 @main() {");
+		startFunction();
+		if(options.gc)
+			buffer.append(
+				"\n\t%_stack = call i8* @llvm.frameaddress.p0i8(i32 0)" +
+				"\n\tcall void @gc_init(i8* %_stack)"
+			);
+		buffer.append("\n\t%" + n.f11.f0.toString() + " = alloca i8**");
 
 		Scope mainScope = new Scope(currClass, currMethod);
 		n.f14.accept(this, mainScope);		// Variable Declarations
+		allocateSlots(n);
 		n.f15.accept(this, mainScope);		// Statements
 
+		if(options.bufferedOutput)
+			buffer.append("\n\tcall void @flush_out()");
 		buffer.append(
 			"\n\t; Return" +
 			"\n\tret i32 0" +
 			"\n}\n"
 		);
+		flush();
 
 		return null;
 	}
 
 
 	public String visit(ClassDeclaration n,  Scope scope) throws Exception {
-		Scope classScope = new Scope(classes.get(n.f1.accept(javaVisitor, scope)));
+		Scope classScope = new Scope(classes.get(n.f1.f0.toString()));
 		n.f4.accept(this, classScope);		// Method Declaration
 		return null;
 	}
 
 
 	public String visit(ClassExtendsDeclaration n,  Scope scope) throws Exception {
-		Scope classScope = new Scope(classes.get(n.f1.accept(javaVisitor, scope)));
+		Scope classScope = new Scope(classes.get(n.f1.f0.toString()));
 		n.f6.accept(this, classScope);		// Method Declaration
 		return null;
 	}
 
 
 	public String visit(VarDeclaration n,  Scope scope) throws Exception {
-		VariableInfo var = scope.getVar(n.f1.accept(javaVisitor, scope));
-		buffer.append("\n\t%" + var.name + " = alloca " + typeToLLVM(var.type));
+		VariableInfo var = scope.getVar(n.f1.f0.toString());
+		if(inRegister(var, scope))
+			values.put(var, zero(var.type));
+		else
+			buffer.append("\n\t%" + var.name + " = alloca " + typeToLLVM(var.type));
 		return null;
 	}
 
 
 	public String visit(MethodDeclaration n,  Scope scope) throws Exception {
-		MethodInfo currMethod = scope.getMethod(n.f2.accept(javaVisitor, scope));
+		MethodInfo currMethod = scope.getMethod(n.f2.f0.toString());
 		String retType = typeToLLVM(currMethod.type);
 
-		resetCounters();
 		buffer.append("\n\ndefine " + retType + " @" + scope.currClass.name + "." + currMethod.name + "(i8* %this");
 
 		for (VariableInfo param : currMethod.parameters)
 			buffer.append(", " + typeToLLVM(param.type) + " %." + param.name);
 
 		buffer.append(") {");
+		startFunction();
 
 		Scope methodScope = new Scope(scope.currClass, currMethod);
 		n.f4.accept(this, methodScope);		// Parameters
 		n.f7.accept(this, methodScope);		// Variable Declarations
+		allocateSlots(n);
 		n.f8.accept(this, methodScope);		// Statements
 
 		String retReg = n.f10.accept(this, methodScope);
@@ -228,14 +800,19 @@ public class LLVM_Visitor extends GJDepthFirst<String, Scope> {
 			"\n\tret " + retType + " " + retReg +
 			"\n}\n"
 		);
+		flush();
 
 		return null;
 	}
 
 
 	public String visit(FormalParameter n,  Scope scope) throws Exception {
-		VariableInfo param = scope.currMethod.getParam(n.f1.accept(javaVisitor, scope));
+		VariableInfo param = scope.currMethod.getParam(n.f1.f0.toString());
 		String regType = typeToLLVM(param.type);
+		if(inRegister(param, scope)) {
+			values.put(param, "%." + param.name);
+			return null;
+		}
 
 		buffer.append(
 			"\n\t%" + param.name + " = alloca " + regType +
@@ -249,8 +826,12 @@ public class LLVM_Visitor extends GJDepthFirst<String, Scope> {
 	public String visit(AssignmentStatement n, Scope scope) throws Exception {
 		buffer.append("\n\t; Assignment Statement");
 
-		VariableInfo var = scope.getVar(n.f0.accept(javaVisitor, scope));
+		VariableInfo var = annotations.variable(n.f0);
 		String regType = typeToLLVM(var.type);
+		if(inRegister(var, scope)) {
+			values.put(var, n.f2.accept(this, scope));
+			return null;
+		}
 
 		String varReg = getVariableRegister(var, scope);
 		String exprReg = n.f2.accept(this, scope);
@@ -262,44 +843,56 @@ public class LLVM_Visitor extends GJDepthFirst<String, Scope> {
 	public String visit(ArrayAssignmentStatement n, Scope scope) throws Exception {
 		buffer.append("\n\t; Array Assignment Statement");
 
-		VariableInfo var = scope.getVar(n.f0.accept(javaVisitor, scope));
-		String regType = typeToLLVM(var.type.replace("[]", ""));
-
-		String label1 = newLabel();
-		String label2 = newLabel();
-		String label3 = newLabel();
-
-		String indexReg = n.f2.accept(this, scope);
-		String checkReg1 = newRegister();
-		buffer.append(					// Check if index is smaller than 0
-			"\n\t" + checkReg1 + " = icmp slt i32 " + indexReg + ", 0" +
-			"\n\tbr i1 "+ checkReg1 + ", label %"+ label2 + ", label %" + label1 +
-			"\n" + label1 + ":\t; Check Bounds next"
-		);
+		VariableInfo var = annotations.variable(n.f0);
+		String regType = typeToLLVM(var.type.element);
+		int omit = omittedChecks(n, true);
+		String indexReg, arrReg;
+
+		if(omit < 0) {
+			String label1 = newLabel();
+			String label2 = newLabel();
+			String label3 = newLabel();
+
+			indexReg = n.f2.accept(this, scope);
+			String checkReg1 = newRegister();
+			buffer.append(					// Check if index is smaller than 0
+				"\n\t" + checkReg1 + " = icmp slt i32 " + indexReg + ", 0" +
+				"\n\tbr i1 "+ checkReg1 + ", label %"+ label2 + ", label %" + label1 +
+				"\n" + label1 + ":\t; Check Bounds next"
+			);
 
-		String varReg = getVariableRegister(var, scope);
-		String arrReg = newRegister();
-		buffer.append("\n\t" + arrReg + " = load " + regType + "*, " + regType + "** " + varReg);
-
-		String lengthReg = loadArrayLength(arrReg, var.type);
-		String checkReg2 = newRegister();
-		buffer.append(					// Check if index exceeds array length
-			"\n\t" + checkReg2 + " = icmp slt i32 " + indexReg + ", " + lengthReg +
-			"\n\tbr i1 "+ checkReg2 + ", label %"+ label3 + ", label %" + label2 +
-			"\n" + label2 + ":\t; Out of Bounds" +	// Throw out of bounds error
-			"\n\tcall void @throw_oob()" +
-			"\n\tbr label %" + label3 +
-			"\n" + label3 + ":\t; In Bounds"		// Assign new Array
-		);
+			arrReg = loadVariable(var, scope);
+
+			String lengthReg = loadArrayLength(arrReg, var.type);
+			String checkReg2 = newRegister();
+			buffer.append(					// Check if index exceeds array length
+				"\n\t" + checkReg2 + " = icmp slt i32 " + indexReg + ", " + lengthReg +
+				"\n\tbr i1 "+ checkReg2 + ", label %"+ label3 + ", label %" + label2 +
+				"\n" + label2 + ":\t; Out of Bounds" +	// Throw out of bounds error
+				"\n\tcall void @throw_oob()" +
+				"\n\tunreachable" +
+				"\n" + label3 + ":\t; In Bounds"		// Assign new Array
+			);
+			block = label3;
+		}
+		else {		// Only the checks range analysis could not prove
+			indexReg = n.f2.accept(this, scope);
+			arrReg = loadVariable(var, scope);
+
+			if(omit == BoundsCheckElimination.UPPER)
+				checkLowerBound(indexReg);
+			else if((omit & BoundsCheckElimination.UPPER) == 0)
+				checkBounds(indexReg, loadArrayLength(arrReg, var.type));
+		}
 
 		String exprReg = n.f5.accept(this, scope);
-		String offsetReg = newRegister();
-		String ptrReg = newRegister();
-		buffer.append(
-			"\n\t" + offsetReg + " = add i32 " + indexReg + ", " + (regType.equals("i1") ? 4 : 1) +
-			"\n\t" + ptrReg + " = getelementptr " + regType + ", " + regType + "* " + arrReg + ", i32 " + offsetReg +
-			"\n\tstore " + regType + " " + exprReg + ", " + regType + "* " + ptrReg
-		);
+		if(options.packBooleans && var.type == Type.BOOLEAN_ARRAY) {
+			storeBit(arrReg, indexReg, exprReg);
+			return null;
+		}
+
+		String ptrReg = elementPointer(arrReg, indexReg, regType);
+		buffer.append("\n\tstore " + regType + " " + exprReg + ", " + regType + "* " + ptrReg);
 
 		return null;
 	}
@@ -313,23 +906,39 @@ public class LLVM_Visitor extends GJDepthFirst<String, Scope> {
 		String label3 = newLabel();
 		// If
 		String condReg = n.f2.accept(this, scope);
+		Integer cond = constant(condReg);
+		if(cond != null) {		// Only the branch taken is generated
+			((cond != 0) ? n.f4 : n.f6).accept(this, scope);
+			return null;
+		}
+
+		Map<VariableInfo, String> before = values;
 		buffer.append(
 			"\n\tbr i1 " + condReg + ", label %" + label1 + ", label %" + label2 +
 			"\n" + label1 + ":\t; Then"
 		);
 		// Then
+		block = label1;
+		values = new HashMap<>(before);
 		n.f4.accept(this, scope);
+		Map<VariableInfo, String> thenValues = values;
+		String thenBlock = block;
 		buffer.append(
 			"\n\tbr label %" + label3 +
 			"\n" + label2 + ":\t; Else"
 		);
 		// Else
+		block = label2;
+		values = new HashMap<>(before);
 		n.f6.accept(this, scope);
 		buffer.append(
 			"\n\tbr label %" + label3 +
 			"\n" + label3 + ":\t; Exit If"
 		);
 
+		if(options.ssa)		// Phis for locals assigned differently in the two branches
+			values = join(scope, thenValues, thenBlock, values, block);
+		block = label3;
 		return null;
 	}
 
@@ -345,19 +954,55 @@ public class LLVM_Visitor extends GJDepthFirst<String, Scope> {
 			"\n\tbr label %" + label1 +
 			"\n" + label1 + ":\t; Repeat"		// Repeat
 		);
+		// Locals assigned in the loop get a phi at its header, inserted once the back edge values are known
+		String entryBlock = block;
+		int phiPosition = buffer.length();
+		Map<VariableInfo, String> entryValues = values, phis = new LinkedHashMap<>();
+		if(options.ssa) {
+			AssignedVariables assigned = new AssignedVariables(annotations);
+			n.f4.accept(assigned);
+			values = new HashMap<>(entryValues);
+			for(VariableInfo var : locals(scope))
+				if(assigned.assigned.contains(var)) {
+					phis.put(var, newRegister());
+					values.put(var, phis.get(var));
+				}
+		}
+		block = label1;
 		// While Conndition
 		String condReg = n.f2.accept(this, scope);
-		buffer.append(
-			"\n\tbr i1 " + condReg + ", label %" + label2 + ", label %" + label3 +
-			"\n" + label2 + ":\t; Do"
-		);
-		// Do
-		n.f4.accept(this, scope);
-		buffer.append(
-			"\n\tbr label %" + label1 +
-			"\n" + label3 + ":\t; Exit loop"		// Break
-		);
+		Map<VariableInfo, String> exitValues = values;
+		Integer cond = constant(condReg);
+		if(cond != null && cond == 0) {		// Body never runs, the header only has the entry edge
+			buffer.append(
+				"\n\tbr label %" + label3 +
+				"\n" + label3 + ":\t; Exit loop"
+			);
+			block = null;
+		}
+		else {
+			buffer.append(
+				"\n\tbr i1 " + condReg + ", label %" + label2 + ", label %" + label3 +
+				"\n" + label2 + ":\t; Do"
+			);
+			// Do
+			block = label2;
+			values = new HashMap<>(exitValues);
+			n.f4.accept(this, scope);
+			buffer.append(
+				"\n\tbr label %" + label1 +
+				"\n" + label3 + ":\t; Exit loop"		// Break
+			);
+		}
 
+		StringBuilder phiCode = new StringBuilder();
+		for(Map.Entry<VariableInfo, String> phi : phis.entrySet())
+			phiCode.append("\n\t" + phi.getValue() + " = phi " + typeToLLVM(phi.getKey().type) + " [" + entryValues.get(phi.getKey()) + ", %" + entryBlock + "]" +
+						   (block != null ? ", [" + values.get(phi.getKey()) + ", %" + block + "]" : ""));
+		buffer.insert(phiPosition, phiCode);
+
+		values = exitValues;
+		block = label3;
 		return null;
 	}
 
@@ -378,6 +1023,10 @@ public class LLVM_Visitor extends GJDepthFirst<String, Scope> {
 		String label4 = newLabel();
 
 		String exprReg1 = n.f0.accept(this, scope);
+		Integer const1 = constant(exprReg1);
+		if(const1 != null)		// Right clause is skipped or is the result
+			return (const1 == 0) ? "0" : n.f2.accept(this, scope);
+
 		buffer.append(
 			"\n\tbr label %" + label1 +
 			"\n" + label1 + ":\t; And Expression" +
@@ -395,6 +1044,7 @@ public class LLVM_Visitor extends GJDepthFirst<String, Scope> {
 			"\n\t" + retReg + " = phi i1 [0, %" + label1 + "], [" + exprReg2 + ", %" + label3 + "]"
 		);
 
+		block = label4;
 		return retReg;
 	}
 
@@ -402,6 +1052,10 @@ public class LLVM_Visitor extends GJDepthFirst<String, Scope> {
 	public String visit(CompareExpression n, Scope scope) throws Exception {
 		String exprReg1 = n.f0.accept(this, scope);
 		String exprReg2 = n.f2.accept(this, scope);
+		String folded = fold("slt", exprReg1, exprReg2);
+		if(folded != null)
+			return folded;
+
 		String retReg = newRegister();
 
 		buffer.append( "\n\t" + retReg + " = icmp slt i32 " + exprReg1 + ", " + exprReg2);
@@ -412,6 +1066,10 @@ public class LLVM_Visitor extends GJDepthFirst<String, Scope> {
 	public String visit(PlusExpression n, Scope scope) throws Exception {
 		String exprReg1 = n.f0.accept(this, scope);
 		String exprReg2 = n.f2.accept(this, scope);
+		String folded = fold("add", exprReg1, exprReg2);
+		if(folded != null)
+			return folded;
+
 		String retReg = newRegister();
 
 		buffer.append("\n\t" + retReg + " = add i32 " + exprReg1 + ", " + exprReg2);
@@ -422,6 +1080,10 @@ public class LLVM_Visitor extends GJDepthFirst<String, Scope> {
 	public String visit(MinusExpression n, Scope scope) throws Exception {
 		String exprReg1 = n.f0.accept(this, scope);
 		String exprReg2 = n.f2.accept(this, scope);
+		String folded = fold("sub", exprReg1, exprReg2);
+		if(folded != null)
+			return folded;
+
 		String retReg = newRegister();
 
 		buffer.append("\n\t" + retReg + " = sub i32 " + exprReg1 + ", " +exprReg2);
@@ -432,6 +1094,10 @@ public class LLVM_Visitor extends GJDepthFirst<String, Scope> {
 	public String visit(TimesExpression n, Scope scope) throws Exception {
 		String exprReg1 = n.f0.accept(this, scope);
 		String exprReg2 = n.f2.accept(this, scope);
+		String folded = fold("mul", exprReg1, exprReg2);
+		if(folded != null)
+			return folded;
+
 		String retReg = newRegister();
 
 		buffer.append("\n\t" + retReg + " = mul i32 " + exprReg1 + ", " + exprReg2);
@@ -440,39 +1106,54 @@ public class LLVM_Visitor extends GJDepthFirst<String, Scope> {
 
 
 	public String visit(ArrayLookup n, Scope scope) throws Exception {
-		String type = n.f0.accept(javaVisitor, scope);
-		String regType = typeToLLVM(type.replace("[]", ""));
+		Type type = annotations.type(n.f0);
+		String regType = typeToLLVM(type.element);
+		int omit = omittedChecks(n, n.f0.f0.choice instanceof Identifier);
+		String indexReg, arrReg;
+
+		if(omit < 0) {
+			String label1 = newLabel();
+			String label2 = newLabel();
+			String label3 = newLabel();
+
+			String checkReg1 = newRegister();
+			indexReg = n.f2.accept(this, scope);
+			buffer.append(					// Check ig index is smaller than 0
+				"\n\t" + checkReg1 + " = icmp slt i32 " + indexReg + ", 0" +
+				"\n\tbr i1 "+ checkReg1 + ", label %"+ label2 + ", label %" + label1 +
+				"\n" + label1 + ":\t; Check Bounds next"
+			);
 
-		String label1 = newLabel();
-		String label2 = newLabel();
-		String label3 = newLabel();
+			arrReg = n.f0.accept(this, scope);
+			String lengthReg = loadArrayLength(arrReg, type);
+			String checkReg2 = newRegister();
+
+			buffer.append(					// Check if index exceeds array length
+				"\n\t" + checkReg2 + " = icmp slt i32 " + indexReg + ", " + lengthReg +
+				"\n\tbr i1 "+ checkReg2 + ", label %"+ label3 + ", label %" + label2 +
+				"\n" + label2 + ":\t; Out of Bounds" +		// Throw out of bounds error
+				"\n\tcall void @throw_oob()" +
+				"\n\tunreachable" +
+				"\n" + label3 + ":\t; In Bounds"			// Get value of array at index
+			);
+			block = label3;
+		}
+		else {		// Only the checks range analysis could not prove
+			indexReg = n.f2.accept(this, scope);
+			if(omit == BoundsCheckElimination.UPPER)
+				checkLowerBound(indexReg);
+
+			arrReg = n.f0.accept(this, scope);
+			if((omit & BoundsCheckElimination.UPPER) == 0)
+				checkBounds(indexReg, loadArrayLength(arrReg, type));
+		}
 
-		String checkReg1 = newRegister();
-		String indexReg = n.f2.accept(this, scope);
-		buffer.append(					// Check ig index is smaller than 0
-			"\n\t" + checkReg1 + " = icmp slt i32 " + indexReg + ", 0" +
-			"\n\tbr i1 "+ checkReg1 + ", label %"+ label2 + ", label %" + label1 +
-			"\n" + label1 + ":\t; Check Bounds next"
-		);
+		if(options.packBooleans && type == Type.BOOLEAN_ARRAY)
+			return loadBit(arrReg, indexReg);
 
-		String arrReg = n.f0.accept(this, scope);
-		String lengthReg = loadArrayLength(arrReg, type);
-		String checkReg2 = newRegister();
-		String offsetReg = newRegister();
-		String ptrReg = newRegister();
+		String ptrReg = elementPointer(arrReg, indexReg, regType);
 		String retReg = newRegister();
-
-		buffer.append(					// Check if index exceeds array length
-			"\n\t" + checkReg2 + " = icmp slt i32 " + indexReg + ", " + lengthReg +
-			"\n\tbr i1 "+ checkReg2 + ", label %"+ label3 + ", label %" + label2 +
-			"\n" + label2 + ":\t; Out of Bounds" +		// Throw out of bounds error
-			"\n\tcall void @throw_oob()" +
-			"\n\tbr label %" + label3 +
-			"\n" + label3 + ":\t; In Bounds" +			// Get value of array at index
-			"\n\t" + offsetReg + " = add i32 " + indexReg + ", " + (regType.equals("i1") ? 4 : 1) +
-			"\n\t" + ptrReg + " = getelementptr " + regType + ", " + regType + "* " + arrReg + ", i32 " + offsetReg +
-			"\n\t" + retReg + " = load " + regType + ", " + regType + "* " + ptrReg
-		);
+		buffer.append("\n\t" + retReg + " = load " + regType + ", " + regType + "* " + ptrReg);
 
 		return retReg;
 	}
@@ -480,17 +1161,28 @@ public class LLVM_Visitor extends GJDepthFirst<String, Scope> {
 
 	public String visit(ArrayLength n, Scope scope) throws Exception {
 		String arrReg = n.f0.accept(this, scope);
-		String regType = n.f0.accept(javaVisitor, scope);
-		return loadArrayLength(arrReg, regType);
+		Type type = annotations.type(n.f0);
+		return loadArrayLength(arrReg, type);
 	}
 
 
 	public String visit(MessageSend n,  Scope scope) throws Exception {
-		MethodInfo method = classes.get(n.f0.accept(javaVisitor, scope)).getMethod(n.f2.accept(javaVisitor, scope));
+		MethodInfo method = annotations.method(n);
 		String regType = typeToLLVM(method.type);
 
+		ClassInfo target = (hierarchy == null) ? null : hierarchy.target(annotations.type(n.f0).classInfo, method);
+		MethodDeclaration body = (target == null || inliner == null) ? null : inliner.body(method);
 		String exprReg =  n.f0.accept(this, scope);
+		if(body != null)
+			return inline(body, target, method, exprReg, n.f4, scope);
+
 		String args = (n.f4.node == null) ? "" : n.f4.accept(this, scope);
+		if(target != null && options.devirtualize) {		// Monomorphic call, no vtable lookup
+			String retReg = newRegister();
+			buffer.append("\n\t" + retReg + " = call " + regType + " @" + target.name + "." + method.name + "(i8* " + exprReg + args + ")");
+			return retReg;
+		}
+
 		String classPtrReg = newRegister();
 		String classReg = newRegister();
 		String ptrReg = newRegister();
@@ -518,9 +1210,36 @@ public class LLVM_Visitor extends GJDepthFirst<String, Scope> {
 	}
 
 
+	// Generate the body of a small method in place of a call, with this and its parameters bound to the receiver and arguments
+	String inline(MethodDeclaration body, ClassInfo target, MethodInfo method, String exprReg, NodeOptional args, Scope scope) throws Exception {
+		Scope inlineScope = new Scope(target, method);
+		inlineScope.thisReg = exprReg;
+		inlineScope.inlined = true;
+
+		Map<VariableInfo, String> params = new HashMap<>();
+		if(args.present()) {
+			ExpressionList list = (ExpressionList) args.node;
+			params.put(method.parameters.get(0), list.f0.accept(this, scope));
+			for(int i = 0; i < list.f1.f0.size(); i++)
+				params.put(method.parameters.get(i + 1), ((ExpressionTerm) list.f1.f0.elementAt(i)).f1.accept(this, scope));
+		}
+
+		Map<VariableInfo, String> callerValues = values;
+		values = params;
+
+		buffer.append("\n\t; Inlined " + target.name + "." + method.name);
+		body.f7.accept(this, inlineScope);		// Variable Declarations
+		body.f8.accept(this, inlineScope);		// Statements
+		String retReg = body.f10.accept(this, inlineScope);
+
+		values = callerValues;
+		return retReg;
+	}
+
+
 	public String visit(ExpressionList n,  Scope scope) throws Exception {
     	String exprReg = n.f0.accept(this, scope);
-    	String regType = typeToLLVM(n.f0.accept(javaVisitor, scope));
+    	String regType = typeToLLVM(annotations.type(n.f0));
 		return ", " + regType + " " + exprReg + n.f1.accept(this, scope);
 	}
 
@@ -536,7 +1255,7 @@ public class LLVM_Visitor extends GJDepthFirst<String, Scope> {
 
 	public String visit(ExpressionTerm n,  Scope scope) throws Exception {
     	String exprReg = n.f1.accept(this, scope);
-    	String regType = typeToLLVM(n.f1.accept(javaVisitor, scope));
+    	String regType = typeToLLVM(annotations.type(n.f1));
 		return ", " + regType + " " + exprReg;
 	}
 
@@ -557,54 +1276,68 @@ public class LLVM_Visitor extends GJDepthFirst<String, Scope> {
 
 
 	public String visit(Identifier n, Scope scope) throws Exception {
-		VariableInfo var = scope.getVar(n.f0.toString());
-		String regType = typeToLLVM(var.type);
-
-		String ptrReg = getVariableRegister(var, scope);
-		String retReg = newRegister();
-		buffer.append("\n\t" + retReg + " = load " + regType + ", " + regType + "* " + ptrReg);
-		return retReg;
+		return loadVariable(annotations.variable(n), scope);
 	}
 
 
 	public String visit(ThisExpression n, Scope scope) throws Exception {
-		return "%this";
+		return scope.thisReg;
 	}
 
 
 	public String visit(ArrayAllocationExpression n, Scope scope) throws Exception {
-		String regType = typeToLLVM(n.f0.accept(javaVisitor, scope));
-		boolean isBoolean = regType.equals("i1*");
+		boolean isBoolean = n.f0.choice instanceof BooleanArrayAllocationExpression;
+		boolean isPacked = isBoolean && options.packBooleans;		// 64 bit words after an 8 byte header
+		int elementSize = isPacked ? 8 : (isBoolean ? 1 : 4);
 
 		String label1 = newLabel();
 		String label2 = newLabel();
 
 		String lengthReg = n.f0.accept(this, scope);
+		Integer length = constant(lengthReg);
+		if(length != null && length >= 0) {		// Constant length needs no check
+			long elements = isPacked ? (length + 127L) >> 6 : length + (isBoolean ? 4 : 1);
+			String allocReg = newRegister();
+			String arrReg = newRegister();
+			allocate(allocReg, elementSize, String.valueOf(elements), "null");
+			buffer.append(
+				"\n\t" + arrReg + " = bitcast i8* " + allocReg + " to i32*" +
+				"\n\tstore i32 " + lengthReg + ", i32* " + arrReg
+			);
+			return isBoolean ? toBooleanArray(arrReg) : arrReg;
+		}
+
 		String checkReg = newRegister();
 		String offsetReg = newRegister();
 		String allocReg = newRegister();
 		String arrReg = newRegister();
+		String wideReg = isPacked ? newRegister() : null;
+		String wordsReg = isPacked ? newRegister() : null;
+		String countReg = isPacked ? newRegister() : null;
 
 		buffer.append(					// Check if length is smaller than 0
 			"\n\t" + checkReg + " = icmp slt i32 " + lengthReg + ", 0" +
 			"\n\tbr i1 "+ checkReg + ", label %"+ label1 + ", label %" + label2 +
 			"\n" + label1 + ":\t; Out of Bounds" +		// Throw out of bounds error
 			"\n\tcall void @throw_oob()" +
-			"\n\tbr label %" + label2 +
+			"\n\tunreachable" +
 			"\n" + label2 + ":\t; In Bounds" +			// Allocate new array
-			"\n\t" + offsetReg + " = add i32 " + lengthReg + ", " + (isBoolean ? 4 : 1) +
-			"\n\t" + allocReg + " = call i8* @calloc(i32 " + (isBoolean ? 1 : 4) + ", i32 " + offsetReg + ")" +
+			(isPacked ?				// Words for the length rounded up, plus the header, in i64 like the constant length
+				"\n\t" + wideReg + " = zext i32 " + lengthReg + " to i64" +
+				"\n\t" + wordsReg + " = add i64 " + wideReg + ", 127" +
+				"\n\t" + countReg + " = lshr i64 " + wordsReg + ", 6" +
+				"\n\t" + offsetReg + " = trunc i64 " + countReg + " to i32" :
+				"\n\t" + offsetReg + " = add i32 " + lengthReg + ", " + (isBoolean ? 4 : 1))
+		);
+		block = label2;
+
+		allocate(allocReg, elementSize, offsetReg, "null");
+		buffer.append(
 			"\n\t" + arrReg + " = bitcast i8* " + allocReg + " to i32*" +
 			"\n\tstore i32 " + lengthReg + ", i32* " + arrReg
 		);
-		
-		String retReg = arrReg;
-		if(isBoolean) {
-			retReg = newRegister();
-			buffer.append("\n\t" + retReg + " = bitcast i32* " + arrReg + " to i1*");
-		}
 
-		return retReg;
+		return isBoolean ? toBooleanArray(arrReg) : arrReg;
 	}
 
 
@@ -619,13 +1352,21 @@ public class LLVM_Visitor extends GJDepthFirst<String, Scope> {
 
 
 	public String visit(AllocationExpression n, Scope scope) throws Exception {
-		ClassInfo c = classes.get(n.f1.accept(javaVisitor, scope));
+		ClassInfo c = classes.get(n.f1.f0.toString());
+		int size = objectSize(c);
 
 		String retReg = newRegister();
 		String ptrReg = newRegister();
 		String allocReg = newRegister();
+		String slotReg = slots.get(n);
+		if(slotReg != null)		// Stack slot, zeroed again each time the allocation runs
+			buffer.append(
+				"\n\tstore [" + size + " x i8] zeroinitializer, [" + size + " x i8]* " + slotReg +
+				"\n\t" + retReg + " = bitcast [" + size + " x i8]* " + slotReg + " to i8*"
+			);
+		else
+			allocate(retReg, 1, String.valueOf(size), options.gc ? gcMap(c) : null);
 		buffer.append(
-			"\n\t" + retReg + " = call i8* @calloc(i32 1, i32 " + (c.varOffset + 8) + ")" +
 			"\n\t" + ptrReg + " = bitcast i8* " + retReg + " to i8***" +
 			"\n\t" + allocReg + " = getelementptr [" + (c.methodOffset / 8) + " x i8*], [" + (c.methodOffset / 8) + " x i8*]* @." + c.name + "_vtable, i32 0, i32 0" +
 			"\n\tstore i8** " + allocReg + ", i8*** " + ptrReg
@@ -636,9 +1377,20 @@ public class LLVM_Visitor extends GJDepthFirst<String, Scope> {
 
 
 	public String visit(NotExpression n, Scope scope) throws Exception {
+		Node operand = BoundsCheckElimination.unwrap(n.f1);
+		if(options.constantFolding && operand instanceof NotExpression)		// !!b is b
+			return ((NotExpression) operand).f1.accept(this, scope);
+
 		String exprReg = n.f1.accept(this, scope);
+		Integer value = constant(exprReg);
+		if(value != null)
+			return (value == 0) ? "1" : "0";
+		if(options.constantFolding && negated.containsKey(exprReg))		// Also when b = !c is in a register
+			return negated.get(exprReg);
+
 		String retReg = newRegister();
 		buffer.append("\n\t" + retReg + " = xor i1 1, " + exprReg);
+		negated.put(retReg, exprReg);
 		return retReg;
 	}
 
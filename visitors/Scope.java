@@ -8,6 +8,8 @@ import types.VariableInfo;
 class Scope {
     ClassInfo currClass;
     MethodInfo currMethod;
+    String thisReg = "%this";       // Register holding this, the receiver when the method is inlined
+    boolean inlined;                // Parameters are bound to the argument values of the call site
 
     Scope(ClassInfo currClass) {
         this.currClass = currClass;
@@ -1,32 +1,38 @@
 package visitors;
 
+import java.util.*;
 import types.*;
+import types.Type;
 import syntaxtree.*;
+import visitor.GJDepthFirst;
 
 
-public class TypeCheckVisitor extends DeclarationVisitor {
+public class TypeCheckVisitor extends GJDepthFirst<Type, Scope> {
+	public SymbolTable classes;
+	public Annotations annotations;		// Resolved types, methods and variables for code generation
+	int line, column;
+
 	public TypeCheckVisitor(SymbolTable classes) {
 		this.classes = classes;
+		annotations = new Annotations();
 		line = 1;
 		column = 1;
 	}
 
-	// Utility
-	boolean arrayType(String t) {
-		return t.equals("boolean[]") || t.equals("int[]");
+	void SemanticException(String message) throws Exception {
+		throw DeclarationVisitor.semanticError(line, column, message);
 	}
 
-	boolean validType(String t) {
-		return t.equals("boolean") || t.equals("int") || arrayType(t) || classes.hasClass(t);
-	}
-	// Check if asked type (a) matches declaration type (b)
-	boolean matchTypes(String a, String b) {	
-		return a.equals(b) || (classes.hasClass(a) && classes.get(a).hasAncestor(b));
+	// Utility
+	String name(Identifier n) {
+		line = n.f0.beginLine;
+		column = n.f0.beginColumn;
+		return n.f0.toString();
 	}
 
 	// Visit
-	public String visit(MainClass n,  Scope scope) throws Exception {
-		ClassInfo currClass = classes.get(n.f1.accept(this, scope));
+	public Type visit(MainClass n,  Scope scope) throws Exception {
+		ClassInfo currClass = classes.get(name(n.f1));
 		MethodInfo currMethod = currClass.getMethod("main");
 
 		Scope mainScope = new Scope(currClass, currMethod);
@@ -36,89 +42,113 @@ public class TypeCheckVisitor extends DeclarationVisitor {
 	}
 
 
-	public String visit(ClassDeclaration n,  Scope scope) throws Exception {
-		Scope classScope = new Scope(classes.get(n.f1.accept(this, scope)));
+	public Type visit(ClassDeclaration n,  Scope scope) throws Exception {
+		Scope classScope = new Scope(classes.get(name(n.f1)));
 		n.f3.accept(this, classScope);		// Variable Declaration
 		n.f4.accept(this, classScope);		// Method Declaration
 		return null;
 	}
 
 
-	public String visit(ClassExtendsDeclaration n,  Scope scope) throws Exception {
-		Scope classScope = new Scope(classes.get(n.f1.accept(this, scope)));
+	public Type visit(ClassExtendsDeclaration n,  Scope scope) throws Exception {
+		Scope classScope = new Scope(classes.get(name(n.f1)));
 		n.f5.accept(this, classScope);		// Variable Declaration
 		n.f6.accept(this, classScope);		// Method Declaration
 		return null;
 	}
 
 
-	public String visit(VarDeclaration n,  Scope scope) throws Exception {
+	public Type visit(VarDeclaration n,  Scope scope) throws Exception {
 		n.f0.accept(this, scope);			// Type
 		return null;
 	}
 
 
-	public String visit(MethodDeclaration n,  Scope scope) throws Exception {
+	public Type visit(MethodDeclaration n,  Scope scope) throws Exception {
 		n.f1.accept(this, scope);			// Type
-		MethodInfo currMethod = scope.getMethod(n.f2.accept(this, scope));
-		
+		MethodInfo currMethod = scope.getMethod(name(n.f2));
+
 		Scope methodScope = new Scope(scope.currClass, currMethod);
 		n.f4.accept(this, methodScope);		// Parameters
 		n.f7.accept(this, methodScope);		// Variable Declaration
 		n.f8.accept(this, methodScope);		// Statements
 		// Return expression
-		if(!matchTypes(n.f10.accept(this, methodScope), currMethod.type))
+		if(!n.f10.accept(this, methodScope).isSubtypeOf(currMethod.type))
 			SemanticException("Invalid return type in method '" + currMethod.name + "'");
 
 		return null;
 	}
 
 
-	public String visit(FormalParameter n,  Scope scope) throws Exception {
+	public Type visit(FormalParameter n,  Scope scope) throws Exception {
 		n.f0.accept(this, scope);			// Type
 		return null;
 	}
 
 
-	public String visit(Type n,  Scope scope) throws Exception {
-		String type = n.f0.accept(this, scope);
-		if(!validType(type))				// if t is not valid return type
+	public Type visit(syntaxtree.Type n,  Scope scope) throws Exception {
+		Type type = n.f0.accept(this, scope);
+		if(!type.isValid())				// if t is not valid return type
 			SemanticException("Invalid type '" + type + "'");
 
 		return type;
 	}
 
 
-	public String visit(AssignmentStatement n,  Scope scope) throws Exception {
-		String name = n.f0.accept(this, scope);		// identifier
+	public Type visit(BooleanArrayType n,  Scope scope) throws Exception {
+		return Type.BOOLEAN_ARRAY;
+	}
+
+
+	public Type visit(IntegerArrayType n,  Scope scope) throws Exception {
+		return Type.INT_ARRAY;
+	}
+
+
+	public Type visit(BooleanType n,  Scope scope) throws Exception {
+		return Type.BOOLEAN;
+	}
+
+
+	public Type visit(IntegerType n,  Scope scope) throws Exception {
+		return Type.INT;
+	}
+
+
+	public Type visit(AssignmentStatement n,  Scope scope) throws Exception {
+		String name = name(n.f0);		// identifier
 		VariableInfo var = scope.getVar(name);
 		if(var == null)
 			SemanticException("Variable '" + name + "' not declared in this scope");
-		if(!matchTypes(n.f2.accept(this, scope), var.type))
+
+		annotations.variables.put(n.f0, var);
+		if(!n.f2.accept(this, scope).isSubtypeOf(var.type))
 			SemanticException("Invalid assignment for variable '" + name + "'");
 
 		return null;
 	}
 
 
-	public String visit(ArrayAssignmentStatement n,  Scope scope) throws Exception {
-		String name = n.f0.accept(this, scope);
+	public Type visit(ArrayAssignmentStatement n,  Scope scope) throws Exception {
+		String name = name(n.f0);
 		VariableInfo var = scope.getVar(name);
 		if(var == null)
 			SemanticException("Variable '" + name + "' not declared in this scope");
-		if(!arrayType(var.type))
+
+		annotations.variables.put(n.f0, var);
+		if(!var.type.isArray())
 			SemanticException("Variable '" + name + "' not array type");
-		if(!n.f2.accept(this,scope).equals("int"))
+		if(n.f2.accept(this,scope) != Type.INT)
 			SemanticException("Invalid index type in array variable '" + name + "'");
-		if(!var.type.contains(n.f5.accept(this, scope)))
+		if(n.f5.accept(this, scope) != var.type.element)
 			SemanticException("Invalid assignment for array variable '" + name + "'");
 
 		return null;
 	}
 
 
-	public String visit(IfStatement n,  Scope scope) throws Exception {
-		if(!n.f2.accept(this, scope).equals("boolean"))
+	public Type visit(IfStatement n,  Scope scope) throws Exception {
+		if(n.f2.accept(this, scope) != Type.BOOLEAN)
 			SemanticException("If condition must be 'boolean'");
 
 		n.f4.accept(this, scope);			// then statement
@@ -127,8 +157,8 @@ public class TypeCheckVisitor extends DeclarationVisitor {
 	}
 
 
-	public String visit(WhileStatement n,  Scope scope) throws Exception {
-		if(!n.f2.accept(this, scope).equals("boolean"))
+	public Type visit(WhileStatement n,  Scope scope) throws Exception {
+		if(n.f2.accept(this, scope) != Type.BOOLEAN)
 			SemanticException("While condition must be 'boolean'");
 
 		n.f4.accept(this, scope);			// Statement
@@ -136,191 +166,198 @@ public class TypeCheckVisitor extends DeclarationVisitor {
 	}
 
 
-	public String visit(PrintStatement n,  Scope scope) throws Exception {
-		if(!n.f2.accept(this, scope).equals("int"))
+	public Type visit(PrintStatement n,  Scope scope) throws Exception {
+		if(n.f2.accept(this, scope) != Type.INT)
 			SemanticException("Print expression must be 'int'");
-		
+
 		return null;
 	}
 
 
-	public String visit(AndExpression n,  Scope scope) throws Exception {
-		if(!n.f0.accept(this, scope).equals("boolean") || !n.f2.accept(this, scope).equals("boolean"))
+	public Type visit(Expression n,  Scope scope) throws Exception {
+		Type type = n.f0.accept(this, scope);
+		annotations.types.put(n, type);
+		return type;
+	}
+
+
+	public Type visit(AndExpression n,  Scope scope) throws Exception {
+		if(n.f0.accept(this, scope) != Type.BOOLEAN || n.f2.accept(this, scope) != Type.BOOLEAN)
 			SemanticException("Operator '&&' must have expressions of type 'boolean'");
 
-		return "boolean";
+		return Type.BOOLEAN;
 	}
 
 
-	public String visit(CompareExpression n,  Scope scope) throws Exception {
-		if(!n.f0.accept(this, scope).equals("int") || !n.f2.accept(this, scope).equals("int"))
+	public Type visit(CompareExpression n,  Scope scope) throws Exception {
+		if(n.f0.accept(this, scope) != Type.INT || n.f2.accept(this, scope) != Type.INT)
 			SemanticException("Operator '<' must have expressions of type 'int'");
 
-		return "boolean";
+		return Type.BOOLEAN;
 	}
 
 
-	public String visit(PlusExpression n,  Scope scope) throws Exception {
-		if(!n.f0.accept(this, scope).equals("int") || !n.f2.accept(this, scope).equals("int"))
+	public Type visit(PlusExpression n,  Scope scope) throws Exception {
+		if(n.f0.accept(this, scope) != Type.INT || n.f2.accept(this, scope) != Type.INT)
 			SemanticException("Operator '+' must have expressions of type 'int'");
 
-		return "int";
+		return Type.INT;
 	}
 
 
-	public String visit(MinusExpression n,  Scope scope) throws Exception {
-		if(!n.f0.accept(this, scope).equals("int") || !n.f2.accept(this, scope).equals("int"))
+	public Type visit(MinusExpression n,  Scope scope) throws Exception {
+		if(n.f0.accept(this, scope) != Type.INT || n.f2.accept(this, scope) != Type.INT)
 			SemanticException("Operator '-' must have expressions of type 'int'");
 
-		return "int";
+		return Type.INT;
 	}
 
 
-	public String visit(TimesExpression n,  Scope scope) throws Exception {
-		if(!n.f0.accept(this, scope).equals("int") || !n.f2.accept(this, scope).equals("int"))
+	public Type visit(TimesExpression n,  Scope scope) throws Exception {
+		if(n.f0.accept(this, scope) != Type.INT || n.f2.accept(this, scope) != Type.INT)
 			SemanticException("Operator '*' must have expressions of type 'int'");
 
-		return "int";
+		return Type.INT;
 	}
 
 
-	public String visit(ArrayLookup n,  Scope scope) throws Exception {
-		if(!n.f2.accept(this, scope).equals("int"))
+	public Type visit(ArrayLookup n,  Scope scope) throws Exception {
+		if(n.f2.accept(this, scope) != Type.INT)
 			SemanticException("Array index must be 'int'");
 
-		String type = n.f0.accept(this, scope);
-		if(!arrayType(type))
+		Type type = n.f0.accept(this, scope);
+		if(!type.isArray())
 			SemanticException("Invalid array type");
 
-		return type.replace("[]", "");
+		return type.element;
 	}
 
 
-	public String visit(ArrayLength n,  Scope scope) throws Exception {
-		if(!arrayType(n.f0.accept(this, scope)))
+	public Type visit(ArrayLength n,  Scope scope) throws Exception {
+		if(!n.f0.accept(this, scope).isArray())
 			SemanticException("Attribute 'length' not found");
 
-		return "int";
+		return Type.INT;
 	}
 
 
-	public String visit(MessageSend n,  Scope scope) throws Exception {
-		ClassInfo currClass = classes.get(n.f0.accept(this, scope));
+	public Type visit(MessageSend n,  Scope scope) throws Exception {
+		Type type = n.f0.accept(this, scope);
 
-		String exprList = n.f4.accept(this, scope);
-		String[] parameters = (exprList == null) ? new String[0] : exprList.split(" ");
+		List<Type> parameters = new ArrayList<>();
+		if(n.f4.present()) {
+			ExpressionList exprList = (ExpressionList) n.f4.node;
+			parameters.add(exprList.f0.accept(this, scope));
+			for(Node term : exprList.f1.f0.nodes)
+				parameters.add(((ExpressionTerm) term).f1.accept(this, scope));
+		}
 
-		String name = n.f2.accept(this, scope);
-		MethodInfo method = currClass.getMethod(name);
+		String name = name(n.f2);
+		if(!type.isClass())
+			SemanticException("Type '" + type + "' has no method '" + name + "'");
 
+		MethodInfo method = type.classInfo.getMethod(name);
 		if(method == null)
-			SemanticException("Class '" + currClass.name + "' has no method '" + name + "'");
-		if(method.parameters.size() != parameters.length)
+			SemanticException("Class '" + type + "' has no method '" + name + "'");
+		if(method.parameters.size() != parameters.size())
 			SemanticException("Incorrect number of parameters in method '" + name + "'");
 		// Check if each arg matches declaration
-		for (int i = 0; i < parameters.length; i++)
-			if(!matchTypes(parameters[i], method.parameters.get(i).type))
+		for (int i = 0; i < parameters.size(); i++)
+			if(!parameters.get(i).isSubtypeOf(method.parameters.get(i).type))
 				SemanticException("Invalid parameter in method '" + name + "'");
-		
-		return method.type;
-	}
-
-
-	public String visit(ExpressionList n,  Scope scope) throws Exception {
-		return n.f0.accept(this, scope) + n.f1.accept(this, scope);
-	}
 
-
-	public String visit(ExpressionTail n,  Scope scope) throws Exception {
-		String tail = "";
-		for(Node term : n.f0.nodes)
-			tail += term.accept(this, scope);
-
-		return tail;
+		annotations.methods.put(n, method);
+		return method.type;
 	}
 
 
-	public String visit(ExpressionTerm n,  Scope scope) throws Exception {
-		return " " + n.f1.accept(this, scope);
-	}
+	public Type visit(PrimaryExpression n,  Scope scope) throws Exception {
+		Type type;
+		if(n.f0.which != 3)		// Expr is not identifier then return type
+			type = n.f0.accept(this, scope);
+		else {
+			// Check if variable with this name is declared
+			String name = name((Identifier) n.f0.choice);
+			VariableInfo var = scope.getVar(name);
+			if(var == null)
+				SemanticException("Variable '" + name + "' not declared in this scope");
 
+			annotations.variables.put(n.f0.choice, var);
+			type = var.type;	// Variable type
+		}
 
-	public String visit(PrimaryExpression n,  Scope scope) throws Exception {
-		String expr = n.f0.accept(this, scope);
-		// Expr is not identifier then return type
-		if(n.f0.which != 3)
-			return expr;
-		// Check if variable with this name is declared
-		VariableInfo var = scope.getVar(expr);
-		if(var == null)
-			SemanticException("Variable '" + expr + "' not declared in this scope");
-		// Variable type
-		return var.type;
+		annotations.types.put(n, type);
+		return type;
 	}
 
 
-	public String visit(IntegerLiteral n,  Scope scope) throws Exception {
+	public Type visit(IntegerLiteral n,  Scope scope) throws Exception {
 		line = n.f0.beginLine;
 		column = n.f0.beginColumn;
-		return "int";
+		return Type.INT;
 	}
 
 
-	public String visit(TrueLiteral n,  Scope scope) throws Exception {
+	public Type visit(TrueLiteral n,  Scope scope) throws Exception {
 		line = n.f0.beginLine;
 		column = n.f0.beginColumn;
-		return "boolean";
+		return Type.BOOLEAN;
 	}
 
 
-	public String visit(FalseLiteral n,  Scope scope) throws Exception {
+	public Type visit(FalseLiteral n,  Scope scope) throws Exception {
 		line = n.f0.beginLine;
 		column = n.f0.beginColumn;
-		return "boolean";
+		return Type.BOOLEAN;
+	}
+
+	// Identifier used as a type name
+	public Type visit(Identifier n,  Scope scope) throws Exception {
+		return classes.type(name(n));
 	}
 
 
-	public String visit(ThisExpression n,  Scope scope) throws Exception {
+	public Type visit(ThisExpression n,  Scope scope) throws Exception {
 		line = n.f0.beginLine;
 		column = n.f0.beginColumn;
-		return scope.currClass.name;
+		return scope.currClass.type;
 	}
 
 
-	public String visit(IntegerArrayAllocationExpression n,  Scope scope) throws Exception {
-		if(!n.f3.accept(this, scope).equals("int"))
+	public Type visit(IntegerArrayAllocationExpression n,  Scope scope) throws Exception {
+		if(n.f3.accept(this, scope) != Type.INT)
 			SemanticException("Array allocation size must be 'int'");
 
-		return "int[]";
+		return Type.INT_ARRAY;
 	}
 
 
-	public String visit(BooleanArrayAllocationExpression n,  Scope scope) throws Exception {
-		if(!n.f3.accept(this, scope).equals("int"))
+	public Type visit(BooleanArrayAllocationExpression n,  Scope scope) throws Exception {
+		if(n.f3.accept(this, scope) != Type.INT)
 			SemanticException("Array allocation size must be 'int'");
 
-		return "boolean[]";
+		return Type.BOOLEAN_ARRAY;
 	}
 
-	
-	public String visit(AllocationExpression n,  Scope scope) throws Exception {
-		String type = n.f1.accept(this, scope);
-		if(!validType(type))
+
+	public Type visit(AllocationExpression n,  Scope scope) throws Exception {
+		Type type = n.f1.accept(this, scope);
+		if(!type.isValid())
 			SemanticException("Invalid data type '" + type + "'");
 
 		return type;
 	}
 
 
-	public String visit(NotExpression n,  Scope scope) throws Exception {
-		if(!n.f1.accept(this, scope).equals("boolean"))
+	public Type visit(NotExpression n,  Scope scope) throws Exception {
+		if(n.f1.accept(this, scope) != Type.BOOLEAN)
 			SemanticException("Not expression must be 'boolean'");
-		
-		return "boolean";
+
+		return Type.BOOLEAN;
 	}
 
 
-	public String visit(BracketExpression n,  Scope scope) throws Exception {
+	public Type visit(BracketExpression n,  Scope scope) throws Exception {
 		return n.f1.accept(this, scope);
 	}
 }